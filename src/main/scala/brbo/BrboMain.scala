@@ -4,24 +4,30 @@ import brbo.benchmarks.GenerateSyntheticPrograms
 import brbo.common.AnalysisResult.{RawResult, aggregateResultsIndividual, aggregateResultsSummary}
 import brbo.common._
 import brbo.common.cfg.CFGUtils
+import brbo.common.javac.JavacUtils
+import brbo.common.icra.{Icra, IcraCache, IcraLauncher}
 import brbo.verification.AmortizationMode.ALL_AMORTIZE
 import brbo.verification.BoundChecking.GlobalInvariants
 import brbo.verification.decomposition.{DecompositionResult, NewDecomposition}
-import brbo.verification.{BasicProcessor, BoundChecking}
+import brbo.verification.{BasicProcessor, BoundChecking, TargetMethodCache}
 import com.microsoft.z3.AST
 import org.apache.commons.io.{FileUtils, FilenameUtils}
-import org.apache.logging.log4j.LogManager
+import org.apache.logging.log4j.{LogManager, ThreadContext}
 
 import java.io.File
 import java.nio.charset.Charset
 import java.text.SimpleDateFormat
 import java.util.Date
+import java.util.concurrent.Executors
 import scala.collection.JavaConverters._
 import scala.collection.immutable.HashSet
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, ExecutionContext, Future}
 
 object BrboMain {
   private val logger = LogManager.getLogger("brbo.BrboMain")
   private val BATCH_SIZE = 100
+  private val LOG_CONTEXT_KEY = "file"
 
   val OUTPUT_DIRECTORY: String = s"${System.getProperty("user.dir")}/output"
 
@@ -46,7 +52,17 @@ object BrboMain {
     }
 
     arguments.toString.split("\n").foreach(s => logger.info(s"Command line argument - $s"))
-    logger.warn(s"We assume each class contains exactly one method")
+    logger.info(s"Verify every method that specifies a bound via `mostPreciseBound`")
+
+    if (arguments.getIcraCacheDirectory.nonEmpty) {
+      val maxBytes = arguments.getIcraCacheSize.toLong * 1024 * 1024
+      Icra.setCache(Some(new IcraCache(new File(arguments.getIcraCacheDirectory), maxBytes)))
+    }
+    BasicProcessor.setTargetMethodCache({
+      if (arguments.getTargetMethodCacheSize > 0) Some(new TargetMethodCache(arguments.getTargetMethodCacheSize))
+      else None
+    })
+    Icra.setLauncher(new IcraLauncher(IcraLauncher.defaultScratchRoot, arguments.getIcraJobs))
 
     val sourceFiles: List[(File, String)] = {
       val file = new java.io.File(arguments.getDirectoryToAnalyze)
@@ -82,6 +98,10 @@ object BrboMain {
           case (batch, index) => runBatch(batch, index, sourceFiles.size, date, innerMostPackageName, arguments)
         })
     })
+
+    Icra.getCache.foreach(cache => logger.info(cache.statistics))
+    BasicProcessor.getTargetMethodCache.foreach(cache => logger.info(cache.statistics))
+    JavacUtils.closeFileManagers()
   }
 
   private def runBatch(sourceFiles: List[(File, String)], batchIndex: Int,
@@ -91,14 +111,22 @@ object BrboMain {
     logger.info(s"Run `$batchIndex`-th batch`: $batchString")
 
     val results: List[List[RawResult]] = {
-      sourceFiles.zipWithIndex.map({
-        case ((sourceFile: File, sourceFileContents: String), index) =>
-          val fileIndex = index + batchIndex * BATCH_SIZE
-          val progress: Double = fileIndex.toDouble / totalFiles * 100
-          logger.info(s"Verify `$fileIndex`-th input file. Progress: ${StringFormatUtils.float(progress, 2)}%")
-          val decompositionResult = decompose(sourceFile.getAbsolutePath, sourceFileContents, arguments)
-          checkBound(decompositionResult, arguments)
-      })
+      // Files are independent of each other. Results are collected in the order of the input files
+      val executorService = Executors.newFixedThreadPool(Math.max(arguments.getJobs, 1))
+      implicit val executionContext: ExecutionContext = ExecutionContext.fromExecutorService(executorService)
+      try {
+        val futures = sourceFiles.zipWithIndex.map({
+          case ((sourceFile: File, sourceFileContents: String), index) =>
+            Future {
+              val fileIndex = index + batchIndex * BATCH_SIZE
+              runFile(sourceFile, sourceFileContents, fileIndex, totalFiles, arguments)
+            }
+        })
+        Await.result(Future.sequence(futures), Duration.Inf).flatten
+      }
+      finally {
+        executorService.shutdown()
+      }
     }
 
     logger.info(s"Write results to files. Aggregate results only under mode `$ALL_AMORTIZE`")
@@ -124,14 +152,32 @@ object BrboMain {
     FileUtils.writeStringToFile(rawCsvFile, rawCsvFileContents, Charset.forName("UTF-8"))
   }
 
+  private def runFile(sourceFile: File, sourceFileContents: String, fileIndex: Int,
+                      totalFiles: Int, arguments: CommandLineArguments): List[List[RawResult]] = {
+    // Tag every log message emitted by this thread with the file under verification, such that logs of files that
+    // are verified concurrently are also written to separate files `output/logs/<file>.log` (See `log4j2.properties`)
+    ThreadContext.put(LOG_CONTEXT_KEY, FilenameUtils.getBaseName(sourceFile.getName))
+    try {
+      val progress: Double = fileIndex.toDouble / totalFiles * 100
+      logger.info(s"Verify `$fileIndex`-th input file. Progress: ${StringFormatUtils.float(progress, 2)}%")
+      val decompositionResults = decompose(sourceFile.getAbsolutePath, sourceFileContents, arguments)
+      // Name results by methods only if there are multiple methods, such that names of results are unchanged otherwise
+      val qualifyByMethods = decompositionResults.size > 1
+      decompositionResults.map(results => checkBound(results, qualifyByMethods, arguments))
+    }
+    finally {
+      ThreadContext.remove(LOG_CONTEXT_KEY)
+    }
+  }
+
   /**
    *
    * @param sourceFilePath     Used to extract class name
    * @param sourceFileContents Source code
    * @param arguments          Command line arguments
-   * @return
+   * @return Decomposition results of every method that specifies a bound, in the order of the methods in the source code
    */
-  def decompose(sourceFilePath: String, sourceFileContents: String, arguments: CommandLineArguments): Option[List[DecompositionResult]] = {
+  def decompose(sourceFilePath: String, sourceFileContents: String, arguments: CommandLineArguments): List[List[DecompositionResult]] = {
     logger.info(s"Phase 1: Decompose")
     logger.info(s"Decompose file `$sourceFilePath`")
 
@@ -151,59 +197,77 @@ object BrboMain {
 
     if (className != "brbo.benchmarks.Common") {
       logger.info(s"Parsing...")
-      val targetMethod: TargetMethod = BasicProcessor.getTargetMethod(className, sourceFileContents)
-      if (arguments.getPrintCFG) {
-        logger.info(s"Print CFG to `${CFGUtils.OUTPUT_DIRECTORY}`...")
-        CFGUtils.printPDF(targetMethod.cfg, None)
-        logger.info(s"${targetMethod.cfg.toString}")
-      }
-      val decomposition = new NewDecomposition(targetMethod, arguments, testMode = false)
-      Some(decomposition.decompose)
+      // Compile the file once for all methods
+      val targetMethods: List[TargetMethod] = BasicProcessor.getTargetMethods(className, sourceFileContents, BoundChecking.specifiesBound)
+      if (targetMethods.isEmpty) logger.info(s"No method in file `$sourceFilePath` specifies a bound")
+      targetMethods.map({
+        targetMethod =>
+          logger.info(s"Decompose method `${targetMethod.methodTree.getName}`")
+          if (arguments.getPrintCFG) {
+            logger.info(s"Print CFG to `${CFGUtils.OUTPUT_DIRECTORY}`...")
+            CFGUtils.printPDF(targetMethod.cfg, None)
+            logger.info(s"${targetMethod.cfg.toString}")
+          }
+          val decomposition = new NewDecomposition(targetMethod, arguments, testMode = false)
+          decomposition.decompose
+      })
     }
     else {
       logger.info(s"Skipping bound checking for file `$sourceFilePath`")
-      None
+      Nil
     }
   }
 
   /**
    *
-   * @param decompositionResult Results from decomposition
-   * @param arguments           Command line arguments
+   * @param qualifyByMethods Whether results are named by both classes and methods
+   * @return The number of lines of the method if results are named by methods. Otherwise, the number of lines of the
+   *         compilation unit, such that results of files with a single method keep their line counts
+   */
+  def numberOfLines(targetMethod: TargetMethod, qualifyByMethods: Boolean): Int = {
+    if (qualifyByMethods) targetMethod.numberOfLines
+    else targetMethod.sourceCode.split("\r\n|\r|\n").length
+  }
+
+  /**
+   *
+   * @param decompositionResults Results from decomposing a method
+   * @param qualifyByMethods     Whether to name results by both classes and methods (instead of only by classes)
+   * @param arguments            Command line arguments
    */
-  def checkBound(decompositionResult: Option[List[DecompositionResult]], arguments: CommandLineArguments): List[RawResult] = {
+  def checkBound(decompositionResults: List[DecompositionResult], qualifyByMethods: Boolean, arguments: CommandLineArguments): List[RawResult] = {
     logger.info(s"Phase 2: Bound check")
 
-    decompositionResult match {
-      case Some(decompositionResults) =>
-        decompositionResults.zipWithIndex.map({
-          case (result, index) =>
-            logger.info("")
-            logger.info("")
-            logger.info(s"Check bound for `$index`-th decomposition result")
-            val startTime = System.nanoTime()
-            val inputMethod = result.inputMethod
-            val solver: Z3Solver = new Z3Solver
-            BoundChecking.ensureNoAssertion(inputMethod.methodTree)
-            val boundExpression: AST = BoundChecking.extractBoundExpression(solver,
-              inputMethod.methodTree, inputMethod.inputVariables ++ inputMethod.localVariables, arguments.getLessPreciseBound)
-            logger.info(s"Extracted bound expression is `$boundExpression`")
-
-            val verified = {
-              if (arguments.getDecomposeOnly) {
-                logger.info(s"Not perform bound check")
-                false
-              }
-              else BoundChecking.checkBound(solver, result, boundExpression, arguments)
-            }
-            val endTime = System.nanoTime()
-            val timeElapsed = (endTime - startTime).toDouble / 1000000000
-            logger.info(s"Time consumption: `${StringFormatUtils.float(timeElapsed)}` seconds")
-            val numberOfLines = result.inputMethod.sourceCode.split("\r\n|\r|\n").length
-            RawResult(result.inputMethod.className, timeElapsed, verified, result.amortizationMode, numberOfLines, arguments)
-        })
-      case None => List[RawResult]()
-    }
+    decompositionResults.zipWithIndex.map({
+      case (result, index) =>
+        logger.info("")
+        logger.info("")
+        logger.info(s"Check bound for `$index`-th decomposition result")
+        val startTime = System.nanoTime()
+        val inputMethod = result.inputMethod
+        val solver: Z3Solver = new Z3Solver
+        BoundChecking.ensureNoAssertion(inputMethod.methodTree)
+        val boundExpression: AST = BoundChecking.extractBoundExpression(solver,
+          inputMethod.methodTree, inputMethod.inputVariables ++ inputMethod.localVariables, arguments.getLessPreciseBound)
+        logger.info(s"Extracted bound expression is `$boundExpression`")
+
+        val verified = {
+          if (arguments.getDecomposeOnly) {
+            logger.info(s"Not perform bound check")
+            false
+          }
+          else BoundChecking.checkBound(solver, result, boundExpression, arguments)
+        }
+        val endTime = System.nanoTime()
+        val timeElapsed = (endTime - startTime).toDouble / 1000000000
+        logger.info(s"Time consumption: `${StringFormatUtils.float(timeElapsed)}` seconds")
+        val numberOfLines = BrboMain.numberOfLines(result.inputMethod, qualifyByMethods)
+        val name = {
+          if (qualifyByMethods) s"${result.inputMethod.className}.${result.inputMethod.methodTree.getName}"
+          else result.inputMethod.className
+        }
+        RawResult(name, timeElapsed, verified, result.amortizationMode, numberOfLines, arguments)
+    })
   }
 
   /**
@@ -219,11 +283,12 @@ object BrboMain {
     assert(arguments.getAmortizationMode != ALL_AMORTIZE, "Expect choosing one amortization mode")
 
     decompose(sourceFilePath, sourceFileContents, arguments) match {
-      case Some(decompositionResults) =>
+      case Nil => None
+      case decompositionResults :: Nil =>
         val globalInvariants = decompositionResults.map({ result => BoundChecking.inferInvariantsForResource(solver, result, arguments) })
         assert(globalInvariants.size == 1, "Expect that choosing one amortization mode leads to one decomposition result")
         Some(globalInvariants.head)
-      case None => None
+      case _ => throw new Exception(s"Expect exactly one method that specifies a bound in file `$sourceFilePath`")
     }
   }
 
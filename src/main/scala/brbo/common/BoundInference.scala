@@ -3,40 +3,70 @@ package brbo.common
 import brbo.common.BoundInference.Polynomial
 import brbo.common.TypeUtils.BrboType.INT
 import brbo.common.icra.Icra
+import brbo.verification.dependency.DependencyAnalysis
 import com.microsoft.z3.{BoolExpr, Expr}
-import org.apache.logging.log4j.LogManager
+import org.apache.logging.log4j.{LogManager, ThreadContext}
 
-import scala.collection.immutable.HashSet
+import java.util.concurrent.atomic.AtomicBoolean
+import scala.collection.immutable.{HashMap, HashSet}
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Future, blocking}
 
 class BoundInference(targetMethod: TargetMethod, arguments: CommandLineArguments) {
   private val logger = BoundInference.logger
   private val MAX_COEFFICIENT = 8
+  private val PACK_SIZE = arguments.getIcraPack
+  private val PARALLEL_SEARCH = arguments.getParallelSearch
 
   logger.info(s"Max coefficient: `$MAX_COEFFICIENT`")
   def inferBound(solver: Z3Solver, locations: Locations, whichVariable: String, maxDegree: Int): BoolExpr = {
+    val probes = new Probes(locations, whichVariable)
+    try {
+      inferBound(solver, probes, whichVariable, maxDegree)
+    }
+    finally {
+      probes.cancelAll()
+    }
+  }
+
+  private def inferBound(solver: Z3Solver, probes: Probes, whichVariable: String, maxDegree: Int): BoolExpr = {
+    val variables = templateVariables(whichVariable)
+    // Templates of degree 0, 1, ..., maxDegree, where all coefficients are the max coefficient
+    val templates = (0 to maxDegree).map(degree => BoundInference.generateTemplateInvariant(degree, MAX_COEFFICIENT, variables))
+    probes.speculate(templates)
+
+    val existsUpperBound = probes.check(templates.last)
+    // Escalate the degree of templates until a template bounds the variable, such that bounds of a low degree do not
+    // pay for searching coefficients of high-degree monomials. The template of the max degree is known to bound
     val maxPolynomial = {
-      val integerTyped = targetMethod.inputVariables.filter(pair => pair._2 == INT)
-      BoundInference.generateTemplateInvariant(maxDegree, MAX_COEFFICIENT, integerTyped.keySet.toList)
+      if (!existsUpperBound) templates.last
+      else templates.init.find(template => probes.check(template)).getOrElse(templates.last)
     }
     var result = maxPolynomial
 
-    val existsUpperBound = checkAGuess(locations, maxPolynomial, whichVariable)
-
-    var degree = maxDegree
+    var degree = maxPolynomial.monomials.size - 1
+    logger.trace(s"Search coefficients in the template of degree `$degree` (Max degree: `$maxDegree`)")
     while (degree >= 0) {
       logger.trace(s"Binary search coefficients for degree $degree")
 
       maxPolynomial.monomials(degree).zipWithIndex.foreach({
         case (_, index) =>
           if (existsUpperBound) {
+            // Speculate that this and all subsequent monomials of the same degree can be eliminated
+            val eliminations = (index until maxPolynomial.monomials(degree).size).scanLeft(result)({
+              (polynomial, i) => polynomial.updateCoefficient(degree, i, 0)
+            }).tail
+            probes.speculate(eliminations)
+
             val newPolynomial = result.updateCoefficient(degree, index, 0)
-            if (checkAGuess(locations, newPolynomial, whichVariable)) {
+            if (probes.check(newPolynomial)) {
               logger.trace(s"We can eliminate polynomial ${result.monomials(degree)(index)}")
               result = newPolynomial
             }
             else {
               logger.trace(s"We cannot eliminate polynomial ${result.monomials(degree)(index)}")
-              binarySearchUpperBound(locations, degree, index, 1, MAX_COEFFICIENT, MAX_COEFFICIENT, maxPolynomial, whichVariable) match {
+              binarySearchUpperBound(probes, degree, index, 1, MAX_COEFFICIENT, MAX_COEFFICIENT, maxPolynomial) match {
                 case Some(value) => result = result.updateCoefficient(degree, index, value)
                 case None => result = result.updateCoefficient(degree, index, MAX_COEFFICIENT)
               }
@@ -47,68 +77,148 @@ class BoundInference(targetMethod: TargetMethod, arguments: CommandLineArguments
 
       degree = degree - 1
     }
+
     val boundExpression =
       if (existsUpperBound) solver.mkLe(solver.mkIntVar(whichVariable), result.toExpr(solver))
       else solver.mkTrue()
-    val boundExpressionString = this.synchronized {
-      boundExpression.toString
-    }
-    logger.error(s"Infer bound `$boundExpressionString` for variable `$whichVariable`")
+    logger.error(s"Infer bound `$boundExpression` for variable `$whichVariable`")
     boundExpression
   }
 
-  def checkAGuess(locations: Locations, polynomial: Polynomial, whichVariable: String): Boolean = {
-    val cProgram = InvariantInference.translateToCAndInsertAssertions(targetMethod, locations, s"$whichVariable <= ${polynomial.toString}")
+  /**
+   *
+   * @return Int-typed input variables that taint the given variable. If there is none, return any int-typed input
+   *         variable, because templates need at least one variable to express constants
+   */
+  private def templateVariables(whichVariable: String): List[String] = {
+    val integerTyped = targetMethod.inputVariables.filter(pair => pair._2 == INT).keySet.toList
+    val tainting = DependencyAnalysis.inputsTaintingVariable(targetMethod, whichVariable, debug = false)
+    val result = integerTyped.filter(identifier => tainting.contains(identifier))
+    logger.trace(s"Input variables that taint `$whichVariable`: `$result` (All int-typed input variables: `$integerTyped`)")
+    if (result.isEmpty) integerTyped.take(1)
+    else result
+  }
+
+  def checkAGuess(locations: Locations, polynomial: Polynomial, whichVariable: String,
+                  cancelled: AtomicBoolean = new AtomicBoolean(false)): Boolean = {
+    val cProgram = InvariantInference.translateToCAndInsertAssertions(targetMethod, locations, guessToAssertion(polynomial, whichVariable))
     if (arguments.getPrintIcraInputs) {
       logger.error(s"ICRA input:\n$cProgram")
     }
-    Icra.runAndParseAssertionChecks(cProgram, arguments.getIcraTimeout, icraPath = arguments.getIcraPath) match {
+    Icra.runAndParseAssertionChecks(cProgram, arguments.getIcraTimeout, icraPath = arguments.getIcraPath, cancelled) match {
       case Some(checks) => checks.forall(b => b)
       case None => false
     }
   }
 
+  /**
+   *
+   * @return Whether each guess is an upper bound, in the same order as the guesses. When packing is enabled, every
+   *         `--icra-pack` guesses are checked by a single invocation of ICRA
+   */
+  def checkGuesses(locations: Locations, polynomials: List[Polynomial], whichVariable: String): List[Boolean] = {
+    if (PACK_SIZE <= 1 || polynomials.size <= 1) polynomials.map(polynomial => checkAGuess(locations, polynomial, whichVariable))
+    else polynomials.grouped(PACK_SIZE).flatMap(group => checkPackedGuesses(locations, group, whichVariable)).toList
+  }
+
+  private def checkPackedGuesses(locations: Locations, polynomials: List[Polynomial], whichVariable: String): List[Boolean] = {
+    if (polynomials.size == 1) return List(checkAGuess(locations, polynomials.head, whichVariable))
+
+    val assertions = polynomials.map(polynomial => guessToAssertion(polynomial, whichVariable))
+    val (cProgram, lineRanges) = InvariantInference.translateToCAndInsertAssertionsPacked(targetMethod, locations, assertions)
+    if (arguments.getPrintIcraInputs) {
+      logger.error(s"ICRA input (`${polynomials.size}` packed guesses):\n$cProgram")
+    }
+    Icra.runAndParseAssertionChecksPerLine(cProgram, arguments.getIcraTimeout, icraPath = arguments.getIcraPath) match {
+      case Some(checks) =>
+        lineRanges.zip(polynomials).map({
+          case ((firstLine, lastLine), polynomial) =>
+            val checksInCopy = checks.filter({ case (line, _) => firstLine <= line && line <= lastLine })
+            if (checksInCopy.isEmpty) {
+              logger.trace(s"No assertion check is reported for guess `$polynomial` in the packed program. Check it individually")
+              checkAGuess(locations, polynomial, whichVariable)
+            }
+            else checksInCopy.forall({ case (_, passed) => passed })
+        })
+      case None =>
+        // A time out in the packed program says nothing about any individual guess
+        logger.trace(s"Failed to check `${polynomials.size}` packed guesses. Check them individually")
+        polynomials.map(polynomial => checkAGuess(locations, polynomial, whichVariable))
+    }
+  }
+
+  private def guessToAssertion(polynomial: Polynomial, whichVariable: String): String = s"$whichVariable <= ${polynomial.toString}"
+
   def binarySearchUpperBound(locations: Locations, degree: Int, index: Int, start: Int, end: Int, maxCoefficient: Int, polynomial: Polynomial, whichVariable: String): Option[Int] = {
+    val probes = new Probes(locations, whichVariable)
+    try {
+      binarySearchUpperBound(probes, degree, index, start, end, maxCoefficient, polynomial)
+    }
+    finally {
+      probes.cancelAll()
+    }
+  }
+
+  private def binarySearchUpperBound(probes: Probes, degree: Int, index: Int, start: Int, end: Int, maxCoefficient: Int, polynomial: Polynomial): Option[Int] = {
+    def guess(coefficient: Int): Polynomial = polynomial.updateCoefficient(degree, index, coefficient)
+
+    def checkCoefficient(coefficient: Int): Boolean = probes.check(guess(coefficient))
+
+    val check: Int => Boolean = {
+      if (PACK_SIZE <= 1 || start < 1 || end > maxCoefficient || start > end) coefficient => checkCoefficient(coefficient)
+      else {
+        // Check all candidate coefficients upfront in packed programs, and then binary search over the verdicts,
+        // such that the result is the same as checking the candidates one by one
+        val coefficients = (start to end).toList
+        val verdicts = coefficients.zip(checkGuesses(probes.locations, coefficients.map(guess), probes.whichVariable)).toMap
+        coefficient => verdicts.getOrElse(coefficient, checkCoefficient(coefficient))
+      }
+    }
+    // Probe the start, the end and the middle of every step at the same time
+    val speculate: (Int, Int) => Unit = {
+      (from, to) => if (PACK_SIZE <= 1) probes.speculate(List(from, to, (from + to) / 2).distinct.map(guess))
+    }
+    binarySearchUpperBound(start, end, maxCoefficient, check, speculate)
+  }
+
+  private def binarySearchUpperBound(start: Int, end: Int, maxCoefficient: Int, check: Int => Boolean, speculate: (Int, Int) => Unit): Option[Int] = {
     if (start < 1 || end > maxCoefficient || start > end) {
       logger.trace("1")
       return None
     }
+    speculate(start, end)
 
     if (start == end) {
-      val newPolynomial = polynomial.updateCoefficient(degree, index, start)
       logger.trace("2")
       val result =
-        if (checkAGuess(locations, newPolynomial, whichVariable)) Some(start)
+        if (check(start)) Some(start)
         else None
       return result
     }
 
     {
-      val newPolynomial = polynomial.updateCoefficient(degree, index, start)
       logger.trace("3")
-      if (checkAGuess(locations, newPolynomial, whichVariable)) {
+      if (check(start)) {
         return Some(start)
       }
     }
 
     {
-      val newPolynomial = polynomial.updateCoefficient(degree, index, end)
       logger.trace("4")
-      if (checkAGuess(locations, newPolynomial, whichVariable)) {
+      if (check(end)) {
         return None
       }
     }
 
     {
       val mid = (start + end) / 2
-      val newPolynomial = polynomial.updateCoefficient(degree, index, mid)
-      if (checkAGuess(locations, newPolynomial, whichVariable)) {
+      if (check(mid)) {
         if (start + 1 > mid || start + 1 > maxCoefficient) {
           return Some(mid)
         }
         else {
           val result =
-            binarySearchUpperBound(locations, degree, index, start + 1, mid, maxCoefficient, polynomial, whichVariable) match {
+            binarySearchUpperBound(start + 1, mid, maxCoefficient, check, speculate) match {
               case Some(value) => Some(value)
               case None => Some(mid)
             }
@@ -121,7 +231,7 @@ class BoundInference(targetMethod: TargetMethod, arguments: CommandLineArguments
         }
         else {
           val result =
-            binarySearchUpperBound(locations, degree, index, mid + 1, end, maxCoefficient, polynomial, whichVariable) match {
+            binarySearchUpperBound(mid + 1, end, maxCoefficient, check, speculate) match {
               case Some(value) => Some(value)
               case None => Some(end)
             }
@@ -131,6 +241,61 @@ class BoundInference(targetMethod: TargetMethod, arguments: CommandLineArguments
     }
   }
 
+  /**
+   * Check guesses about the same variable at the same locations. In the parallel search mode (`--parallel-search`),
+   * guesses can be checked speculatively and concurrently before they are needed, and answers are memoized by guess.
+   * Because a guess is always answered by checking exactly that guess, the search result is the same as checking
+   * guesses one by one. Not thread safe: Only the thread that drives the search may use an instance
+   */
+  private class Probes(val locations: Locations, val whichVariable: String) {
+    private var probes = new HashMap[Polynomial, (Future[Boolean], AtomicBoolean)]
+
+    def check(polynomial: Polynomial): Boolean = {
+      if (!PARALLEL_SEARCH) checkAGuess(locations, polynomial, whichVariable)
+      else {
+        val (future, _) = probes.getOrElse(polynomial, launch(polynomial))
+        Await.result(future, Duration.Inf)
+      }
+    }
+
+    /**
+     * Start checking the given guesses, and cancel all other unfinished checks, whose answers are no longer needed
+     */
+    def speculate(polynomials: Iterable[Polynomial]): Unit = {
+      if (PARALLEL_SEARCH) {
+        val needed = polynomials.toSet
+        cancel(polynomial => !needed.contains(polynomial))
+        polynomials.foreach(polynomial => if (!probes.contains(polynomial)) launch(polynomial))
+      }
+    }
+
+    def cancelAll(): Unit = cancel(_ => true)
+
+    private def cancel(shouldCancel: Polynomial => Boolean): Unit = {
+      probes.foreach({
+        case (polynomial, (future, cancelled)) =>
+          if (!future.isCompleted && shouldCancel(polynomial)) {
+            // Forget the probe before cancelling it, such that its (meaningless) answer is never used
+            probes = probes - polynomial
+            cancelled.set(true)
+            logger.trace(s"Cancel checking guess `$polynomial`")
+          }
+      })
+    }
+
+    private def launch(polynomial: Polynomial): (Future[Boolean], AtomicBoolean) = {
+      val cancelled = new AtomicBoolean(false)
+      val logContext = ThreadContext.getImmutableContext
+      val future = Future(blocking {
+        ThreadContext.putAll(logContext)
+        try checkAGuess(locations, polynomial, whichVariable, cancelled)
+        finally ThreadContext.clearMap()
+      })
+      probes = probes + (polynomial -> (future, cancelled))
+      (future, cancelled)
+    }
+  }
+
 }
 
 object BoundInference {
@@ -1,8 +1,9 @@
 package brbo.common
 
 import brbo.common.CommandLineArguments.logger
-import brbo.common.icra.Icra
+import brbo.common.icra.{Icra, IcraCache, IcraLauncher}
 import brbo.verification.AmortizationMode._
+import brbo.verification.TargetMethodCache
 import org.apache.logging.log4j.LogManager
 import org.kohsuke.args4j.{CmdLineException, CmdLineParser, Option}
 
@@ -54,6 +55,42 @@ class CommandLineArguments {
     usage = "The absolute path of binary file `icra`.")
   private var icraPath: String = Icra.ICRA_PATH
 
+  @Option(name = "--jobs", aliases = Array("-j"), required = false,
+    usage = "The number of input files to verify concurrently.")
+  private var jobs: Int = 1
+
+  @Option(name = "--icra-cache", required = false,
+    usage = "The directory that persists ICRA's results across runs. An empty string means not caching ICRA's results.")
+  private var icraCacheDirectory: String = IcraCache.DEFAULT_DIRECTORY
+
+  @Option(name = "--icra-cache-size", required = false,
+    usage = "The maximum size (unit: megabytes) of the ICRA cache. The least recently used results are evicted first.")
+  private var icraCacheSize: Int = IcraCache.DEFAULT_MAX_MEGABYTES
+
+  @Option(name = "--target-method-cache", required = false,
+    usage = "The maximum number of compiled methods that are kept in memory for reuse. 0 means not caching compiled methods.")
+  private var targetMethodCacheSize: Int = TargetMethodCache.DEFAULT_MAX_ENTRIES
+
+  @Option(name = "--icra-pack", required = false,
+    usage = "The maximum number of candidate bounds to check in a single invocation to ICRA. 1 means not packing candidate bounds.")
+  private var icraPack: Int = 1
+
+  @Option(name = "--parallel-search", required = false,
+    usage = "Speculatively check independent guesses of coefficients in parallel. Inferred bounds are the same as without this option.")
+  private var parallelSearch: Boolean = false
+
+  @Option(name = "--icra-jobs", required = false,
+    usage = "The maximum number of ICRA processes that run at the same time. Default: The number of processors.")
+  private var icraJobs: Int = IcraLauncher.defaultMaxConcurrentProcesses
+
+  @Option(name = "--z3-command-line", required = false,
+    usage = "Discharge bound check queries to a pool of Z3 processes (e.g., to isolate crashes of Z3), instead of via Z3's Java API.")
+  private var z3CommandLine: Boolean = false
+
+  @Option(name = "--decompose-jobs", required = false,
+    usage = "The number of groups whose reset locations are decided concurrently under selective amortization.")
+  private var decomposeJobs: Int = 1
+
   def getAmortizationMode: AmortizationMode = {
     amortizationMode.toLowerCase() match {
       case "no" => NO_AMORTIZE
@@ -86,6 +123,24 @@ class CommandLineArguments {
 
   def getIcraPath: String = icraPath
 
+  def getJobs: Int = jobs
+
+  def getIcraCacheDirectory: String = icraCacheDirectory
+
+  def getIcraCacheSize: Int = icraCacheSize
+
+  def getTargetMethodCacheSize: Int = targetMethodCacheSize
+
+  def getIcraPack: Int = icraPack
+
+  def getParallelSearch: Boolean = parallelSearch
+
+  def getIcraJobs: Int = icraJobs
+
+  def getZ3CommandLine: Boolean = z3CommandLine
+
+  def getDecomposeJobs: Int = decomposeJobs
+
   private var initialized = false
 
   def initialize(amortizationMode: AmortizationMode,
@@ -99,7 +154,16 @@ class CommandLineArguments {
                  decomposeOnly: Boolean,
                  lessPreciseBound: Boolean,
                  generateSynthetic: Int,
-                 icraPath: String): Unit = {
+                 icraPath: String,
+                 jobs: Int = 1,
+                 icraCacheDirectory: String = "",
+                 icraCacheSize: Int = IcraCache.DEFAULT_MAX_MEGABYTES,
+                 icraPack: Int = 1,
+                 z3CommandLine: Boolean = false,
+                 icraJobs: Int = IcraLauncher.defaultMaxConcurrentProcesses,
+                 parallelSearch: Boolean = false,
+                 decomposeJobs: Int = 1,
+                 targetMethodCacheSize: Int = TargetMethodCache.DEFAULT_MAX_ENTRIES): Unit = {
     if (initialized) {
       logger.info(s"Already initialized")
       return
@@ -117,6 +181,15 @@ class CommandLineArguments {
     this.lessPreciseBound = lessPreciseBound
     this.generateSynthetic = generateSynthetic
     this.icraPath = icraPath
+    this.jobs = jobs
+    this.icraCacheDirectory = icraCacheDirectory
+    this.icraCacheSize = icraCacheSize
+    this.icraPack = icraPack
+    this.z3CommandLine = z3CommandLine
+    this.icraJobs = icraJobs
+    this.parallelSearch = parallelSearch
+    this.decomposeJobs = decomposeJobs
+    this.targetMethodCacheSize = targetMethodCacheSize
   }
 
   override def toString: String = {
@@ -132,7 +205,15 @@ class CommandLineArguments {
       s"No bound check? `$decomposeOnly`",
       s"Check less precise bounds? `$lessPreciseBound`",
       s"Generate `$generateSynthetic` synthetic programs",
-      s"Icra path is `$icraPath`"
+      s"Icra path is `$icraPath`",
+      s"Number of concurrent jobs: `$jobs`",
+      s"ICRA cache: `${if (icraCacheDirectory.isEmpty) "disabled" else icraCacheDirectory}` (at most `$icraCacheSize` MB)",
+      s"Number of candidate bounds packed into an invocation to ICRA: `$icraPack`",
+      s"Run Z3 in a separate process for bound checks? `$z3CommandLine`",
+      s"Number of concurrent ICRA processes: `$icraJobs`",
+      s"Speculatively search coefficients in parallel? `$parallelSearch`",
+      s"Number of groups whose resets are decided concurrently: `$decomposeJobs`",
+      s"Target method cache: ${if (targetMethodCacheSize > 0) s"at most `$targetMethodCacheSize` methods" else "`disabled`"}"
     )
     strings.mkString("\n")
   }
@@ -168,7 +249,10 @@ object CommandLineArguments {
     val arguments = new CommandLineArguments
     arguments.initialize(UNKNOWN, debugMode = false, "", skipSanityCheck = false,
       printCounterExample = false, printIcraInputs = false, icraTimeout = 20,
-      printCFG = false, decomposeOnly = false, lessPreciseBound = false, generateSynthetic = 0, icraPath = Icra.ICRA_PATH)
+      printCFG = false, decomposeOnly = false, lessPreciseBound = false, generateSynthetic = 0, icraPath = Icra.ICRA_PATH,
+      jobs = 1, icraCacheDirectory = "", icraCacheSize = IcraCache.DEFAULT_MAX_MEGABYTES, icraPack = 1,
+      z3CommandLine = false, icraJobs = IcraLauncher.defaultMaxConcurrentProcesses, parallelSearch = false, decomposeJobs = 1,
+      targetMethodCacheSize = TargetMethodCache.DEFAULT_MAX_ENTRIES)
     arguments
   }
 }
\ No newline at end of file
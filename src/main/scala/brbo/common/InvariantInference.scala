@@ -83,13 +83,7 @@ object InvariantInference {
    */
   def translateToCAndInsertAssertions(targetMethod: TargetMethod, locations: Locations, assertion: String): String = {
     val indent = 2
-    val ASSERT = s"assert($assertion)"
-
-    val newMethodBody = InstrumentUtils.instrumentStatementTrees(
-      targetMethod,
-      StatementTreeInstrumentation(locations, _ => s"$ASSERT;"),
-      indent
-    )
+    val newMethodBody = insertAssertions(targetMethod, locations, assertion, indent)
     InstrumentUtils.replaceMethodBodyAndGenerateSourceCode(
       targetMethod,
       NewMethodInformation(None, None, None, Nil, None, isAbstractClass = false, newMethodBody),
@@ -97,4 +91,25 @@ object InvariantInference {
       indent
     )
   }
+
+  /**
+   *
+   * @param locations  The locations before or after which we insert assertions
+   * @param assertions Each assertion is inserted into an independent copy of the method
+   * @return The C program that packs all copies, and the line ranges of each copy (in the same order as the assertions)
+   */
+  def translateToCAndInsertAssertionsPacked(targetMethod: TargetMethod, locations: Locations, assertions: List[String]): (String, List[(Int, Int)]) = {
+    val indent = 2
+    val newMethodBodies = assertions.map(assertion => insertAssertions(targetMethod, locations, assertion, indent))
+    InstrumentUtils.replaceMethodBodiesAndGeneratePackedCSourceCode(targetMethod, newMethodBodies)
+  }
+
+  private def insertAssertions(targetMethod: TargetMethod, locations: Locations, assertion: String, indent: Int): String = {
+    val ASSERT = s"assert($assertion)"
+    InstrumentUtils.instrumentStatementTrees(
+      targetMethod,
+      StatementTreeInstrumentation(locations, _ => s"$ASSERT;"),
+      indent
+    )
+  }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package brbo.common
+
+import brbo.common.cfg.CFGUtils
+import com.sun.source.tree.{StatementTree, Tree}
+import com.sun.source.util.TreeScanner
+import org.checkerframework.dataflow.cfg.block.Block
+import org.checkerframework.dataflow.cfg.node.Node
+
+import java.util
+
+/**
+ * The loop-nesting forest of a method, computed once from the AST and the CFG, such that queries about enclosing loops
+ * do not walk tree paths or recompute dominators
+ *
+ * @param targetMethod The method whose loops are indexed
+ */
+class LoopForest(targetMethod: TargetMethod) {
+  /**
+   *
+   * @param minimal The minimal loop that encloses a tree (or the tree itself if it is a loop)
+   * @param maximal The maximal loop that encloses a tree (or the tree itself if it is a loop)
+   * @param depth   The number of loops that enclose a tree (including the tree itself if it is a loop)
+   */
+  private case class Enclosing(minimal: Option[StatementTree], maximal: Option[StatementTree], depth: Int)
+
+  private val enclosing = new util.IdentityHashMap[Tree, Enclosing]
+
+  if (targetMethod.methodTree.getBody != null) {
+    new TreeScanner[Void, Enclosing] {
+      override def scan(tree: Tree, outer: Enclosing): Void = {
+        if (tree == null) return null
+        val current = {
+          if (TreeUtils.loopKinds.contains(tree.getKind)) {
+            val loop = tree.asInstanceOf[StatementTree]
+            Enclosing(Some(loop), if (outer.maximal.isDefined) outer.maximal else Some(loop), outer.depth + 1)
+          }
+          else outer
+        }
+        enclosing.put(tree, current)
+        super.scan(tree, current)
+      }
+    }.scan(targetMethod.methodTree.getBody, Enclosing(None, None, 0))
+  }
+
+  /**
+   * For each block (indexed as in the indexed CFG), the first node of the nearest dominator (including the block itself)
+   * that is the target of a back edge
+   */
+  private lazy val headers: Array[Option[Node]] = {
+    val indexedCFG = targetMethod.indexedCFG
+    val backEdgeTargets = new util.IdentityHashMap[Block, java.lang.Boolean]
+    CFGUtils.findAllBackEdges(indexedCFG.graph, indexedCFG.root).foreach({ case (_, to) => backEdgeTargets.put(to.block, true) })
+    indexedCFG.blocks.map({
+      block =>
+        var dominator: Option[Block] = Some(block)
+        var header: Option[Node] = None
+        while (header.isEmpty && dominator.isDefined) {
+          if (backEdgeTargets.containsKey(dominator.get)) header = Some(indexedCFG.nodes(indexedCFG.blockIndex(dominator.get)).head)
+          else dominator = indexedCFG.immediateDominator(dominator.get)
+        }
+        header
+    })
+  }
+
+  def minimalEnclosingLoop(tree: Tree): Option[StatementTree] = get(tree).minimal
+
+  def maximalEnclosingLoop(tree: Tree): Option[StatementTree] = get(tree).maximal
+
+  def depth(tree: Tree): Int = get(tree).depth
+
+  /**
+   *
+   * @return The entry node of the minimal loop (in the CFG) that encloses the node
+   */
+  def header(node: Node): Option[Node] = headers(targetMethod.indexedCFG.blockIndex(node.getBlock))
+
+  private def get(tree: Tree): Enclosing = {
+    val result = enclosing.get(tree)
+    if (result == null) throw new Exception(s"Tree `$tree` is not in method `${targetMethod.methodTree.getName}`")
+    result
+  }
+}
@@ -0,0 +1,70 @@
+package brbo.common
+
+import com.sun.source.tree.{StatementTree, Tree}
+import com.sun.source.util.TreeScanner
+
+import java.util
+
+/**
+ * Number the statement trees of a method in pre-order, which is also the order of their positions in the source code.
+ * Every statement tree is then an interval from its own number to the number of its last enclosed statement tree, such
+ * that containment and overlap between trees are interval comparisons, instead of comparisons between sets of enclosed
+ * trees (e.g., computed by `TreeUtils.collectStatementTrees`)
+ *
+ * @param targetMethod The method whose statement trees are indexed
+ */
+class StatementTreeIndex(targetMethod: TargetMethod) {
+  private val firsts = new util.IdentityHashMap[StatementTree, Integer]
+  private val lasts = new util.IdentityHashMap[StatementTree, Integer]
+
+  if (targetMethod.methodTree.getBody != null) {
+    new TreeScanner[Void, Void] {
+      private var next = 0
+
+      override def scan(tree: Tree, p: Void): Void = {
+        tree match {
+          case statementTree: StatementTree =>
+            firsts.put(statementTree, next)
+            next = next + 1
+            super.scan(tree, p)
+            lasts.put(statementTree, next - 1)
+          case _ => super.scan(tree, p)
+        }
+        null
+      }
+    }.scan(targetMethod.methodTree.getBody, null)
+  }
+
+  /**
+   *
+   * @return A stable identifier of the statement tree, which increases with the source position
+   */
+  def id(tree: StatementTree): Int = {
+    val first = firsts.get(tree)
+    if (first == null) throw new Exception(s"Statement tree `$tree` is not in method `${targetMethod.methodTree.getName}`")
+    first
+  }
+
+  private def last(tree: StatementTree): Int = {
+    id(tree) // Ensure the tree is indexed
+    lasts.get(tree)
+  }
+
+  /**
+   *
+   * @return If tree 1 encloses tree 2. Every tree encloses itself
+   */
+  def encloses(tree1: StatementTree, tree2: StatementTree): Boolean = {
+    id(tree1) <= id(tree2) && last(tree2) <= last(tree1)
+  }
+
+  /**
+   *
+   * @return If any tree enclosed in `trees1` is also enclosed in `trees2`
+   */
+  def overlap(trees1: Iterable[StatementTree], trees2: Iterable[StatementTree]): Boolean = {
+    trees1.exists(tree1 => trees2.exists(tree2 => id(tree1) <= last(tree2) && id(tree2) <= last(tree1)))
+  }
+
+  def sort[T <: StatementTree](trees: Iterable[T]): List[T] = trees.toList.sortBy(tree => id(tree))
+}
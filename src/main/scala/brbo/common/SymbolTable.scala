@@ -0,0 +1,69 @@
+package brbo.common
+
+import brbo.common.GhostVariableUtils.GhostVariable.Resource
+
+import java.util
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Intern variable names into dense integers (in the order of their first occurrences), such that sets of variables can
+ * be bit sets. Names are never removed. Thread safe
+ */
+class SymbolTable {
+  private val indices = new util.HashMap[String, Integer]
+  private val symbols = new ArrayBuffer[String]
+  private val resourceVariables = new util.BitSet
+
+  def intern(name: String): Int = this.synchronized {
+    val index = indices.get(name)
+    if (index != null) index
+    else {
+      val newIndex = symbols.size
+      indices.put(name, newIndex)
+      symbols.append(name)
+      if (GhostVariableUtils.isGhostVariable(name, Resource)) resourceVariables.set(newIndex)
+      newIndex
+    }
+  }
+
+  /**
+   *
+   * @return The integer of the name, or None if the name was never interned
+   */
+  def lookup(name: String): Option[Int] = this.synchronized {
+    Option(indices.get(name)).map(index => index.intValue())
+  }
+
+  def intern(names: Iterable[String]): util.BitSet = {
+    val bits = new util.BitSet
+    names.foreach(name => bits.set(intern(name)))
+    bits
+  }
+
+  def names(bits: util.BitSet): Set[String] = this.synchronized {
+    var result = Set[String]()
+    var index = bits.nextSetBit(0)
+    while (index >= 0) {
+      result = result + symbols(index)
+      index = bits.nextSetBit(index + 1)
+    }
+    result
+  }
+
+  /**
+   *
+   * @return A copy of the bit set of all interned resource variables
+   */
+  def resourceVariableMask: util.BitSet = this.synchronized {
+    resourceVariables.clone().asInstanceOf[util.BitSet]
+  }
+
+  def size: Int = this.synchronized {
+    symbols.size
+  }
+}
+
+object SymbolTable {
+  // For sets of variables that are not associated with any method
+  val shared = new SymbolTable
+}
@@ -1,9 +1,8 @@
 package brbo.common
 
 import brbo.common.TypeUtils.BrboType.{BOOL, BrboType, INT, VOID}
-import brbo.common.cfg.CFGUtils.deepCopyGraph
-import brbo.common.cfg.UniqueNode
-import brbo.verification.dependency.{BrboNode, ControlDependency, ReachingDefinition}
+import brbo.common.cfg.{IndexedCFG, UniqueNode}
+import brbo.verification.dependency.{BrboNode, ControlDependency, DependencyGraph, ReachingDefinition}
 import com.ibm.wala.util.graph.NumberedGraph
 import com.sun.source.tree.{MethodTree, StatementTree, Tree}
 import com.sun.source.util.TreePath
@@ -11,6 +10,7 @@ import org.apache.logging.log4j.LogManager
 import org.checkerframework.dataflow.cfg.ControlFlowGraph
 import org.checkerframework.dataflow.cfg.block.Block
 
+import java.util.concurrent.atomic.AtomicInteger
 import scala.collection.immutable.HashMap
 
 /**
@@ -19,24 +19,35 @@ import scala.collection.immutable.HashMap
  * @param methodTree             The method that we wish to analyze
  * @param getLineNumber          A function to get line numbers
  * @param cfg                    The control flow graph of the method
+ * @param sourceCode             The source code of the compilation unit that declares the method
+ * @param numberOfLines          The number of lines of the method (instead of the compilation unit)
  */
 case class TargetMethod(fullQualifiedClassName: String,
                         methodTree: MethodTree,
                         cfg: ControlFlowGraph,
                         getLineNumber: Tree => Int,
                         getPath: Tree => TreePath,
-                        sourceCode: String) {
+                        sourceCode: String,
+                        numberOfLines: Int) {
   private val logger = LogManager.getLogger(classOf[TargetMethod])
 
   TreeUtils.acceptableTree(methodTree.getBody)
 
-  val inputVariables: Map[String, BrboType] = TreeUtils.getAllInputVariables(methodTree)
-  logger.trace(s"[Method `${methodTree.getName}`] Input variables: `$inputVariables`")
+  // Facets of the method are computed on demand (and at most once), because many methods (e.g., those created for
+  // subprograms during decomposition) only use a few of them
+  lazy val inputVariables: Map[String, BrboType] = {
+    val inputVariables = TreeUtils.getAllInputVariables(methodTree)
+    logger.trace(s"[Method `${methodTree.getName}`] Input variables: `$inputVariables`")
+    inputVariables
+  }
 
-  val localVariables: Map[String, BrboType] =
-    if (methodTree.getBody == null) new HashMap[String, BrboType]
-    else TreeUtils.getAllDeclaredVariables(methodTree.getBody)
-  logger.trace(s"[Method `${methodTree.getName}`] Local variables: `$localVariables`")
+  lazy val localVariables: Map[String, BrboType] = {
+    val localVariables =
+      if (methodTree.getBody == null) new HashMap[String, BrboType]
+      else TreeUtils.getAllDeclaredVariables(methodTree.getBody)
+    logger.trace(s"[Method `${methodTree.getName}`] Local variables: `$localVariables`")
+    localVariables
+  }
 
   val returnType: BrboType = methodTree.getReturnType.toString match {
     case "int" => INT
@@ -45,7 +56,13 @@ case class TargetMethod(fullQualifiedClassName: String,
     case _ => throw new Exception(s"Unexpected return type: ${methodTree.getReturnType} (Kind: ${methodTree.getReturnType.getKind})")
   }
 
-  val (numberedGraph: NumberedGraph[BrboNode], rootOfNumberedGraph: BrboNode) = deepCopyGraph(cfg, transpose = false)
+  private val indexedCFGFacet = new TargetMethod.Facet("indexedCFG", new IndexedCFG(cfg))
+
+  def indexedCFG: IndexedCFG = indexedCFGFacet.get
+
+  def numberedGraph: NumberedGraph[BrboNode] = indexedCFG.graph
+
+  def rootOfNumberedGraph: BrboNode = indexedCFG.root
 
   val className: String = {
     // We expect input method's class name to be a fully qualified class name (e.g., `x.y.z.OutputHandler`)
@@ -65,14 +82,70 @@ case class TargetMethod(fullQualifiedClassName: String,
     }
   }
 
-  val sortedCommands: List[StatementTree] = TreeUtils.collectCommands(methodTree.getBody).toList.sortWith({ case (c1, c2) => c1.toString < c2.toString })
-  val commandsNodesMap: Map[StatementTree, Set[UniqueNode]] = {
+  private val statementTreeIndexFacet = new TargetMethod.Facet("statementTreeIndex", new StatementTreeIndex(this))
+
+  def statementTreeIndex: StatementTreeIndex = statementTreeIndexFacet.get
+
+  // Sorted by source positions
+  lazy val sortedCommands: List[StatementTree] = statementTreeIndex.sort(TreeUtils.collectCommands(methodTree.getBody))
+
+  private val commandsNodesMapFacet = new TargetMethod.Facet("commandsNodesMap", {
     sortedCommands.foldLeft(new HashMap[StatementTree, Set[UniqueNode]])({
       (acc, command) => acc + (command -> TreeUtils.getNodesCorrespondingToCommand(cfg, command))
     })
+  })
+
+  def commandsNodesMap: Map[StatementTree, Set[UniqueNode]] = commandsNodesMapFacet.get
+
+  private val reachingDefinitionsFacet = new TargetMethod.Facet("reachingDefinitions", ReachingDefinition.run(this))
+
+  def reachingDefinitions: ReachingDefinition = reachingDefinitionsFacet.get
+
+  private val controlDependencyFacet = new TargetMethod.Facet("controlDependency", ControlDependency.computeReverseControlDependency(this))
+
+  def controlDependency: Map[Block, Set[Block]] = controlDependencyFacet.get
+
+  private val loopForestFacet = new TargetMethod.Facet("loopForest", new LoopForest(this))
+
+  def loopForest: LoopForest = loopForestFacet.get
+
+  private val symbolTableFacet = new TargetMethod.Facet("symbolTable", new SymbolTable)
+
+  def symbolTable: SymbolTable = symbolTableFacet.get
+
+  private val dependencyGraphFacet = new TargetMethod.Facet("dependencyGraph", new DependencyGraph(reachingDefinitions, controlDependency, symbolTable))
+
+  def dependencyGraph: DependencyGraph = dependencyGraphFacet.get
+
+  /**
+   *
+   * @return For each memoized facet, how many accesses were answered without recomputing the facet
+   */
+  def facetHits: Map[String, Int] = {
+    List[TargetMethod.Facet[_]](indexedCFGFacet, commandsNodesMapFacet, reachingDefinitionsFacet, controlDependencyFacet,
+      symbolTableFacet, dependencyGraphFacet, loopForestFacet, statementTreeIndexFacet)
+      .foldLeft(new HashMap[String, Int])({ (acc, facet) => acc + (facet.name -> facet.hits) })
   }
+}
+
+object TargetMethod {
+
+  /**
+   * A value that is computed on the first access and then memoized. Thread safe
+   *
+   * @param name    The name of the value
+   * @param compute How to compute the value
+   */
+  private[common] class Facet[T](val name: String, compute: => T) {
+    private val accesses = new AtomicInteger(0)
+    private lazy val value: T = compute
 
-  def reachingDefinitions: ReachingDefinition = ReachingDefinition.run(this)
+    def get: T = {
+      accesses.incrementAndGet()
+      value
+    }
+
+    def hits: Int = Math.max(accesses.get() - 1, 0)
+  }
 
-  def controlDependency: Map[Block, Set[Block]] = ControlDependency.computeReverseControlDependency(this)
 }
@@ -0,0 +1,95 @@
+package brbo.common
+
+import java.util
+import scala.collection.mutable
+
+/**
+ * Disjoint sets over elements numbered from 0, with path compression and union by size
+ *
+ * @param size The number of elements, each of which is initially a singleton set
+ */
+class UnionFind(val size: Int) {
+  private val parents: Array[Int] = Array.tabulate(size)(index => index)
+  private val sizes: Array[Int] = Array.fill(size)(1)
+
+  /**
+   *
+   * @return The representative of the set that contains the element
+   */
+  def find(element: Int): Int = {
+    var root = element
+    while (parents(root) != root) root = parents(root)
+    var current = element
+    while (parents(current) != root) {
+      val next = parents(current)
+      parents(current) = root
+      current = next
+    }
+    root
+  }
+
+  /**
+   *
+   * @return The representative of the union of the sets that contain the two elements
+   */
+  def union(element1: Int, element2: Int): Int = {
+    val root1 = find(element1)
+    val root2 = find(element2)
+    if (root1 == root2) root1
+    else if (sizes(root1) >= sizes(root2)) {
+      parents(root2) = root1
+      sizes(root1) = sizes(root1) + sizes(root2)
+      root1
+    }
+    else {
+      parents(root1) = root2
+      sizes(root2) = sizes(root1) + sizes(root2)
+      root2
+    }
+  }
+
+  def isRepresentative(element: Int): Boolean = parents(element) == element
+
+  /**
+   *
+   * @return The representatives of all sets, in the order of the minimal elements of the sets
+   */
+  def representatives: List[Int] = (0 until size).map(element => find(element)).distinct.toList
+}
+
+object UnionFind {
+  /**
+   * Repeatedly merge two values that should be merged, until no two values should be merged. A worklist records the
+   * values that are not yet compared against all others, such that only pairs that involve a newly merged value are
+   * re-examined, instead of all pairs after every merge
+   *
+   * @param values      The values to be merged
+   * @param shouldMerge If two values should be merged
+   * @param merge       Merge two values
+   * @return The merged values, in the order of the first values (in the input) that they come from
+   */
+  def mergeUntilFixpoint[T](values: List[T], shouldMerge: (T, T) => Boolean, merge: (T, T) => T): List[T] = {
+    val current: mutable.Buffer[T] = values.toBuffer
+    val unionFind = new UnionFind(current.size)
+    val worklist = new util.ArrayDeque[Integer]
+    current.indices.foreach(index => worklist.addLast(index))
+    while (!worklist.isEmpty) {
+      val index: Int = worklist.pollFirst()
+      if (unionFind.isRepresentative(index)) {
+        current.indices.find({
+          other =>
+            other != index && unionFind.isRepresentative(other) &&
+              shouldMerge(current(index), current(other))
+        }) match {
+          case Some(other) =>
+            val merged = merge(current(index), current(other))
+            val root = unionFind.union(index, other)
+            current(root) = merged
+            worklist.addFirst(root)
+          case None =>
+        }
+      }
+    }
+    unionFind.representatives.map(index => current(index))
+  }
+}
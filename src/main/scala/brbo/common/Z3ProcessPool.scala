@@ -0,0 +1,140 @@
+package brbo.common
+
+import brbo.common.Z3ProcessPool.{Z3Process, logger}
+import org.apache.logging.log4j.LogManager
+
+import java.io._
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue, Semaphore}
+import scala.collection.JavaConverters._
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.{Duration, SECONDS}
+import scala.concurrent.{Await, Future, TimeoutException, blocking}
+
+/**
+ * A pool of long-lived Z3 processes (`z3 -in`) that answer SMT-LIB queries sent over their standard inputs. Running Z3
+ * in separate processes isolates crashes of Z3 from the JVM, without paying for starting a process per query.
+ *
+ * Every query is checked in its own scope (`(push)` and `(pop)`), and every process is `(reset)` periodically. A process
+ * that crashes or times out is killed, and a new process is started for the next query.
+ *
+ * @param z3Path     The path of binary `z3`
+ * @param maxWorkers The maximum number of Z3 processes
+ * @param timeout    The timeout (unit: seconds) of each query
+ */
+class Z3ProcessPool(z3Path: String, maxWorkers: Int, timeout: Int) {
+  private val permits = new Semaphore(Math.max(maxWorkers, 1))
+  private val idleWorkers = new ConcurrentLinkedQueue[Z3Process]
+  private val allWorkers = ConcurrentHashMap.newKeySet[Z3Process]()
+
+  sys.addShutdownHook(shutdown())
+
+  /**
+   *
+   * @param query SMT-LIB commands that declare variables and assert constraints, without `(check-sat)`
+   * @return `sat`, `unsat` or `unknown`. Time outs and crashes are `unknown`
+   */
+  def checkSAT(query: String): String = {
+    permits.acquire()
+    try {
+      val worker = Option(idleWorkers.poll()) match {
+        case Some(worker) => worker
+        case None =>
+          val worker = new Z3Process(z3Path, timeout)
+          allWorkers.add(worker)
+          worker
+      }
+      worker.check(query) match {
+        case Some(result) =>
+          idleWorkers.add(worker)
+          result
+        case None =>
+          allWorkers.remove(worker)
+          worker.destroy()
+          Z3ProcessPool.UNKNOWN
+      }
+    }
+    finally {
+      permits.release()
+    }
+  }
+
+  def shutdown(): Unit = {
+    allWorkers.asScala.foreach(worker => worker.destroy())
+    allWorkers.clear()
+    idleWorkers.clear()
+  }
+}
+
+object Z3ProcessPool {
+  private val logger = LogManager.getLogger("brbo.common.Z3ProcessPool")
+
+  val SAT = "sat"
+  val UNSAT = "unsat"
+  val UNKNOWN = "unknown"
+
+  private val END_MARKER = "brbo-end-of-query"
+  private val RESET_PERIOD = 100 // Reset a process after these many queries, to drop the state that Z3 accumulates
+  private val GRACE_PERIOD = 2 // Unit: Seconds. How long to wait beyond Z3's own time out before killing the process
+
+  /**
+   * Not thread safe. The pool ensures that at most one query is sent to a process at the same time
+   */
+  private class Z3Process(z3Path: String, timeout: Int) {
+    private val process = new ProcessBuilder(z3Path, "-in", "-smt2").redirectErrorStream(true).start()
+    private val writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream, StandardCharsets.UTF_8))
+    private val reader = new BufferedReader(new InputStreamReader(process.getInputStream, StandardCharsets.UTF_8))
+    private var numberOfQueries = 0
+
+    /**
+     *
+     * @return None if the process crashed or timed out
+     */
+    def check(query: String): Option[String] = {
+      val reset = {
+        if (numberOfQueries % RESET_PERIOD == 0) s"(reset)\n(set-option :timeout ${timeout * 1000})\n"
+        else ""
+      }
+      numberOfQueries = numberOfQueries + 1
+      val future = Future(blocking {
+        writer.write(s"$reset(push)\n$query\n(check-sat)\n(pop)\n(echo \"$END_MARKER\")\n")
+        writer.flush()
+        readResult()
+      })
+      val actualTimeout = Duration(timeout + GRACE_PERIOD, SECONDS)
+      try {
+        Await.result(future, actualTimeout)
+      }
+      catch {
+        case _: TimeoutException =>
+          logger.fatal(s"Z3 process timed out after `$actualTimeout`!")
+          None
+        case e: IOException =>
+          logger.error(s"Z3 process crashed", e)
+          None
+      }
+    }
+
+    def destroy(): Unit = {
+      process.destroyForcibly()
+    }
+
+    private def readResult(): Option[String] = {
+      var result: Option[String] = None
+      var line = reader.readLine()
+      while (line != null && line != END_MARKER) {
+        line match {
+          case SAT | UNSAT | UNKNOWN => result = Some(line)
+          case _ => logger.error(s"Z3 process output: `$line`")
+        }
+        line = reader.readLine()
+      }
+      if (line == null) {
+        logger.fatal(s"Z3 process exited unexpectedly")
+        None
+      }
+      else Some(result.getOrElse(UNKNOWN))
+    }
+  }
+
+}
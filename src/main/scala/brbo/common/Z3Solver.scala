@@ -3,18 +3,15 @@ package brbo.common
 import com.microsoft.z3._
 import org.apache.logging.log4j.LogManager
 
-import java.io.PrintWriter
-import java.nio.file.Files
 import scala.concurrent.duration.{Duration, SECONDS}
 import scala.concurrent.{Await, Future, TimeoutException, blocking}
-import scala.sys.process.ProcessLogger
-import scala.sys.process._
 import scala.concurrent.ExecutionContext.Implicits.global
 
 class Z3Solver {
   // Copied from hopper: https://github.com/cuplv/hopper
-  // This is a thread safe version
-  // Otherwise, inferring invariants in parallel would break, due to concurrently invoking Z3 APIs
+  // Every instance owns its Z3 context, which must not be used by multiple threads at the same time. To use Z3 in
+  // parallel, create an instance per task and move ASTs between instances with `translate`, instead of sharing one
+  // instance (whose methods would then serialize on the same monitor)
   private val logger = Z3Solver.logger
 
   Z3Solver.loadNativeLibraries()
@@ -26,6 +23,24 @@ class Z3Solver {
     Z3Solver.solverCheck(solver, printUnsatCore)
   }
 
+  /**
+   * Same as `checkSAT`, except that Z3 is interrupted if it does not finish within `timeout` seconds, in case Z3 does
+   * not promptly respect the `timeout` parameter of the solver
+   */
+  def checkSATWithInterruption(printUnsatCore: Boolean, timeout: Int): Boolean = {
+    val future = Future(blocking(checkSAT(printUnsatCore)))
+    val actualTimeout = Duration(timeout, SECONDS)
+    try {
+      Await.result(future, actualTimeout)
+    }
+    catch {
+      case _: TimeoutException =>
+        logger.fatal(s"Z3 timed out after `$actualTimeout`!")
+        context.interrupt() // Thread-safe. The interrupted query returns `UNKNOWN`
+        Await.result(future, Duration.Inf)
+    }
+  }
+
   def checkAssertionPushPop(ast: AST, printUnsatCore: Boolean): Boolean = this.synchronized {
     push()
     mkAssert(ast)
@@ -195,6 +210,30 @@ class Z3Solver {
     )
   }
 
+  /**
+   *
+   * @param ast  An AST created by solver `from`
+   * @param from The solver that created the AST
+   * @return The same AST, but created under the context of this solver
+   */
+  def translate[T <: AST](ast: T, from: Z3Solver): T = {
+    if (from eq this) ast
+    else {
+      from.synchronized {
+        this.synchronized {
+          ast.translate(context).asInstanceOf[T]
+        }
+      }
+    }
+  }
+
+  /**
+   * Release the Z3 context. ASTs created by this solver must not be used afterwards (Translate them first)
+   */
+  def close(): Unit = this.synchronized {
+    context.close()
+  }
+
   def printAssertions(): Unit = this.synchronized {
     logger.error("Assertions are:")
     solver.getAssertions.foreach(expression => println(expression))
@@ -210,60 +249,26 @@ object Z3Solver {
 
   private val configuration = new java.util.HashMap[String, String]
   configuration.put("model", "true")
-  private val Z3_COMMAND_LINE_TIMEOUT = 10 // Unit: Seconds
+  val Z3_TIMEOUT = 10 // Unit: Seconds
 
   val Z3_PATH: String = s"${System.getProperty("user.dir")}/lib/z3/z3"
 
-  def toSmt2File(solver: Z3Solver): String = solver.solver.toString
+  def toSmt2File(solver: Z3Solver): String = solver.synchronized {
+    solver.solver.toString
+  }
 
-  def checkSATCommandLine(solver: Z3Solver): Boolean = {
-    val stdout = new StringBuilder
-    val stderr = new StringBuilder
-
-    val smt2FileContents = toSmt2File(solver) + "\n(check-sat)"
-    val file = Files.createTempFile("prefix-", ".smt2")
-    new PrintWriter(file.toAbsolutePath.toString) {
-      write(smt2FileContents);
-      close()
-    }
+  private val MAX_Z3_PROCESSES = Runtime.getRuntime.availableProcessors()
 
-    val cmd = s"$Z3_PATH -T:$Z3_COMMAND_LINE_TIMEOUT -smt2 ${file.toAbsolutePath}"
+  private lazy val processPool = new Z3ProcessPool(Z3_PATH, MAX_Z3_PROCESSES, Z3_TIMEOUT)
 
-    try {
-      val process = cmd.run(ProcessLogger(stdout append _, stderr append _))
-      val future = Future(blocking(process.exitValue()))
-      val actualTimeout = Duration(Z3_COMMAND_LINE_TIMEOUT, SECONDS)
-      val result = try {
-        Await.result(future, actualTimeout)
-      } catch {
-        case _: TimeoutException =>
-          logger.fatal(s"Z3 timed out after `$actualTimeout`!")
-          process.destroy()
-          process.exitValue()
-      }
-      if (result == 0) {
-        val removeFile = s"rm $file"
-        removeFile.!!
-        stdout.toString() match {
-          case "unsat" => false
-          case "sat" => true
-          case _ =>
-            logger.info(s"Z3 stdout:\n$stdout")
-            throw new Exception("Unknown Z3 output")
-        }
-      }
-      else {
-        logger.fatal(s"Error when running Z3. Exit code: `$result`")
-        logger.error(s"stderr:\n$stderr")
-        false
-      }
-    }
-    catch {
-      case e: Exception =>
-        logger.error(s"Exception when executing command `$cmd`", e)
-        logger.error(s"stdout:\n$stdout")
-        logger.error(s"stderr:\n$stderr")
-        throw new RuntimeException("Error when running Z3")
+  /**
+   * Check satisfiability with a Z3 process (from a pool of long-lived Z3 processes), instead of via Z3's Java API
+   */
+  def checkSATCommandLine(solver: Z3Solver): Boolean = {
+    processPool.checkSAT(toSmt2File(solver)) match {
+      case Z3ProcessPool.UNSAT => false
+      case Z3ProcessPool.SAT => true
+      case output => throw Z3UnknownException(s"`$output` - Reason: Z3 process returned unknown, timed out, or crashed")
     }
   }
 
@@ -279,7 +284,7 @@ object Z3Solver {
   private def createSolverUnderContext(context: Context): Solver = {
     val solver = context.mkSolver
     val parameters = context.mkParams()
-    parameters.add("timeout", 10000)
+    parameters.add("timeout", Z3_TIMEOUT * 1000)
     parameters.add("unsat_core", true)
     solver.setParameters(parameters)
     solver
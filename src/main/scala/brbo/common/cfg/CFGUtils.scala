@@ -4,7 +4,6 @@ import brbo.BrboMain
 import brbo.common.TargetMethod
 import brbo.verification.dependency.BrboNode
 import com.ibm.wala.util.graph.NumberedGraph
-import com.ibm.wala.util.graph.dominators.Dominators
 import com.ibm.wala.util.graph.impl.DelegatingNumberedGraph
 import com.sun.source.tree.ExpressionStatementTree
 import org.apache.logging.log4j.LogManager
@@ -191,28 +190,9 @@ object CFGUtils {
   }
 
   def entryOfMinimalEnclosingLoop(node: Node, targetMethod: TargetMethod): Option[Node] = {
-    val graph = targetMethod.numberedGraph
-    val root = targetMethod.rootOfNumberedGraph
-    val backEdges: Set[(BrboNode, BrboNode)] = findAllBackEdges(graph, root)
-    val dominators = Dominators.make(graph, root)
-
-    graph.iterator().asScala.find({
-      brboNode: BrboNode =>
-        val nodes = brboNode.block.getNodes
-        if (nodes == null) false
-        else nodes.contains(node)
-    }) match {
-      case Some(brboNode) =>
-        dominators.dominators(brboNode).asScala.find({
-          dominator => backEdges.exists({ case (_, to) => to == dominator })
-        }) match {
-          case Some(brboNode2) => Some(brboNode2.block.getNodes.asScala.head)
-          case None =>
-            logger.debug(s"No back edge to any dominator of block `${brboNode.block}`")
-            None
-        }
-      case None => throw new Exception(s"Node `$node` should exist in the CFG of method `${targetMethod.methodTree.getName}`")
-    }
+    val entry = targetMethod.loopForest.header(node)
+    if (entry.isEmpty) logger.debug(s"No back edge to any dominator of block `${node.getBlock}`")
+    entry
   }
 
   def nodeUniqueIdentifier(node: Node): String = nodeToString(node)
@@ -222,7 +202,8 @@ object CFGUtils {
   }
 
   def getNodeIndexInBlock(node: Node): Int = {
-    val index = node.getBlock.getNodes.asScala.map(n => nodeUniqueIdentifier(n)).indexOf(nodeUniqueIdentifier(node))
+    // Nodes are compared by identity, because `Node.equals` is structural
+    val index = node.getBlock.getNodes.asScala.indexWhere(n => n eq node)
     assert(index != -1)
     index
   }
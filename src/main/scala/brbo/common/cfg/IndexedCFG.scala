@@ -0,0 +1,164 @@
+package brbo.common.cfg
+
+import brbo.verification.dependency.BrboNode
+import com.ibm.wala.util.graph.NumberedGraph
+import com.ibm.wala.util.graph.dominators.{DominanceFrontiers, Dominators}
+import org.checkerframework.dataflow.cfg.ControlFlowGraph
+import org.checkerframework.dataflow.cfg.block.Block
+import org.checkerframework.dataflow.cfg.node.Node
+
+import java.util
+import scala.collection.JavaConverters._
+
+/**
+ * A control flow graph where blocks (that are reachable from the entry) are numbered from 0, such that successors,
+ * predecessors, the nodes in each block and the dominator tree are all arrays indexed by block numbers. Shared by all
+ * analyses of a method, and immutable (or lazily computed) once constructed
+ *
+ * @param cfg The control flow graph of a method
+ */
+class IndexedCFG(val cfg: ControlFlowGraph) {
+  // The forward graph and the transposed graph cannot share `BrboNode`s, because edges are stored in `BrboNode`s
+  val (graph: NumberedGraph[BrboNode], root: BrboNode) = CFGUtils.deepCopyGraph(cfg, transpose = false)
+
+  val blocks: Array[Block] = graph.asScala.map(brboNode => brboNode.block).toArray
+
+  private val blockIndices = new util.IdentityHashMap[Block, Integer]
+  blocks.indices.foreach(index => blockIndices.put(blocks(index), index))
+
+  private val brboNodes: Array[BrboNode] = graph.asScala.toArray
+
+  val successors: Array[Array[Int]] = blocks.map(block => block.getSuccessors.asScala.toArray.map(successor => blockIndex(successor)).distinct)
+
+  val predecessors: Array[Array[Int]] = {
+    val predecessors = Array.fill(blocks.length)(List[Int]())
+    successors.indices.foreach(from => successors(from).foreach(to => predecessors(to) = from :: predecessors(to)))
+    predecessors.map(list => list.reverse.toArray)
+  }
+
+  val nodes: Array[Array[Node]] = blocks.map({
+    block =>
+      val nodes = block.getNodes
+      if (nodes == null) Array[Node]()
+      else nodes.asScala.toArray
+  })
+
+  private val nodeIndicesInBlock = new util.IdentityHashMap[Node, Integer]
+  nodes.foreach(nodesInBlock => nodesInBlock.indices.foreach(index => nodeIndicesInBlock.put(nodesInBlock(index), index)))
+
+  /**
+   * The immediate dominator of each block (-1 for the entry block), and the pre-order and the post-order numbers of each
+   * block in the dominator tree. A block dominates another iff its interval contains the other's interval
+   */
+  private lazy val (immediateDominators: Array[Int], preOrder: Array[Int], postOrder: Array[Int]) = {
+    val dominators = Dominators.make(graph, root)
+    val immediateDominators = brboNodes.map({
+      brboNode =>
+        val immediateDominator = dominators.getIdom(brboNode)
+        if (immediateDominator == null) -1 else blockIndex(immediateDominator.block)
+    })
+    val children = Array.fill(blocks.length)(List[Int]())
+    immediateDominators.indices.foreach({
+      index => if (immediateDominators(index) != -1) children(immediateDominators(index)) = index :: children(immediateDominators(index))
+    })
+
+    val preOrder = Array.fill(blocks.length)(-1)
+    val postOrder = Array.fill(blocks.length)(-1)
+    var counter = 0
+    val stack = new util.ArrayDeque[(Int, Boolean)]
+    stack.push((blockIndex(root.block), false))
+    while (!stack.isEmpty) {
+      val (index, finished) = stack.pop()
+      if (finished) postOrder(index) = counter
+      else {
+        preOrder(index) = counter
+        stack.push((index, true))
+        children(index).foreach(child => stack.push((child, false)))
+      }
+      counter = counter + 1
+    }
+    (immediateDominators, preOrder, postOrder)
+  }
+
+  /**
+   * Dominance frontiers in the transposed graph (i.e., post-dominance frontiers), from which control dependencies are
+   * computed
+   */
+  lazy val (transposedGraph: NumberedGraph[BrboNode], postDominanceFrontiers: DominanceFrontiers[BrboNode]) = {
+    val (transposedGraph, transposedRoot) = CFGUtils.deepCopyGraph(cfg, transpose = true)
+    (transposedGraph, new DominanceFrontiers(transposedGraph, transposedRoot))
+  }
+
+  def blockIndex(block: Block): Int = {
+    val index = blockIndices.get(block)
+    if (index == null) throw new Exception(s"Block `$block` is not reachable from the entry")
+    index
+  }
+
+  def brboNode(block: Block): BrboNode = brboNodes(blockIndex(block))
+
+  def nodeIndexInBlock(node: Node): Int = {
+    val index = nodeIndicesInBlock.get(node)
+    assert(index != null, s"Node `$node` is not in any block")
+    index
+  }
+
+  def immediateDominator(block: Block): Option[Block] = {
+    val index = immediateDominators(blockIndex(block))
+    if (index == -1) None else Some(blocks(index))
+  }
+
+  /**
+   *
+   * @return If block 1 is dominated by block 2. Every block dominates itself
+   */
+  def isDominatedBy(block1: Block, block2: Block): Boolean = {
+    val index1 = blockIndex(block1)
+    val index2 = blockIndex(block2)
+    preOrder(index2) <= preOrder(index1) && postOrder(index1) <= postOrder(index2)
+  }
+
+  /**
+   *
+   * @param targets Nodes that are reachable from the entry
+   * @return All nodes that dominate every target node, from the lowest to the highest in the dominator tree
+   */
+  def commonDominators(targets: Iterable[Node]): List[Node] = {
+    assert(targets.nonEmpty)
+    val lowestBlock = targets.map(target => blockIndex(target.getBlock)).reduce(lowestCommonDominator)
+    // In the lowest block, only nodes that are not after any target node in the same block
+    val lowestNodeIndex = {
+      val indices = targets.filter(target => blockIndex(target.getBlock) == lowestBlock).map(target => nodeIndexInBlock(target))
+      if (indices.isEmpty) nodes(lowestBlock).length - 1 else indices.min
+    }
+    var result: List[Node] = Nil
+    var block = lowestBlock
+    var nodeIndex = lowestNodeIndex
+    while (block != -1) {
+      while (nodeIndex >= 0) {
+        result = nodes(block)(nodeIndex) :: result
+        nodeIndex = nodeIndex - 1
+      }
+      block = immediateDominators(block)
+      if (block != -1) nodeIndex = nodes(block).length - 1
+    }
+    result.reverse
+  }
+
+  private def lowestCommonDominator(block1: Int, block2: Int): Int = {
+    var block = block1
+    while (!(preOrder(block) <= preOrder(block2) && postOrder(block2) <= postOrder(block))) block = immediateDominators(block)
+    block
+  }
+
+  /**
+   *
+   * @return If node 1 is dominated by node 2. Every node dominates itself
+   */
+  def isDominatedBy(node1: Node, node2: Node): Boolean = {
+    val block1 = node1.getBlock
+    val block2 = node2.getBlock
+    if (block1 != block2) isDominatedBy(block1, block2)
+    else nodeIndexInBlock(node1) >= nodeIndexInBlock(node2)
+  }
+}
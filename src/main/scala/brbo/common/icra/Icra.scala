@@ -1,92 +1,106 @@
 package brbo.common.icra
 
-import java.io.PrintWriter
-import java.nio.file.Files
-
 import brbo.common.TypeUtils.BrboType._
 import brbo.common.Z3Solver
 import com.microsoft.z3.AST
 import org.apache.logging.log4j.LogManager
 
+import java.util.concurrent.atomic.AtomicBoolean
 import scala.collection.immutable.HashSet
-import scala.concurrent.ExecutionContext.Implicits.global
-import scala.concurrent._
-import scala.concurrent.duration.{Duration, SECONDS}
-import scala.sys.process._
 
 object Icra {
   private val logger = LogManager.getLogger("brbo.common.icra.Icra")
   val ICRA_PATH = s"${System.getProperty("user.home")}/Documents/workspace/icra/icra"
+  val ICRA_FLAGS = "-cra-split-loops -cra-prsd"
+
+  // Results are not cached unless a cache is set
+  @volatile private var cache: Option[IcraCache] = None
+
+  def setCache(newCache: Option[IcraCache]): Unit = cache = newCache
+
+  def getCache: Option[IcraCache] = cache
+
+  @volatile private var launcher: IcraLauncher = null
+
+  def setLauncher(newLauncher: IcraLauncher): Unit = this.synchronized {
+    if (launcher != null) launcher.shutdown()
+    launcher = newLauncher
+  }
+
+  private def getLauncher: IcraLauncher = this.synchronized {
+    if (launcher == null)
+      launcher = new IcraLauncher(IcraLauncher.defaultScratchRoot, IcraLauncher.defaultMaxConcurrentProcesses)
+    launcher
+  }
 
   def runAndParseInvariant(sourceCode: String, timeout: Int, icraPath: String): Option[List[ParsedInvariant]] = {
-    runAndGetStdOutput(sourceCode, timeout, icraPath) match {
+    val icraOutput: Option[String] = cache match {
+      case Some(cache) =>
+        val key = IcraCache.computeKey(IcraCache.INVARIANTS, sourceCode, ICRA_FLAGS, icraPath)
+        cache.getInvariants(key) match {
+          case Some(cachedOutput) => Some(cachedOutput)
+          case None =>
+            val output = runAndGetStdOutput(sourceCode, timeout, icraPath)
+            output.foreach(o => cache.putInvariants(key, o)) // Never cache time outs or errors
+            output
+        }
+      case None => runAndGetStdOutput(sourceCode, timeout, icraPath)
+    }
+    icraOutput match {
       case Some(icraOutput) => Some(parseInvariants(icraOutput))
       case None => None
     }
   }
 
-  def runAndParseAssertionChecks(sourceCode: String, timeout: Int, icraPath: String): Option[List[Boolean]] = {
-    runAndGetStdOutput(sourceCode, timeout, icraPath) match {
-      case Some(icraOutput) => Some(parseAssertionChecks(icraOutput))
-      case None => None
+  /**
+   *
+   * @param cancelled Once set, ICRA is killed and the result is None
+   */
+  def runAndParseAssertionChecks(sourceCode: String, timeout: Int, icraPath: String,
+                                 cancelled: AtomicBoolean = new AtomicBoolean(false)): Option[List[Boolean]] = {
+    cache match {
+      case Some(cache) =>
+        val key = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, sourceCode, ICRA_FLAGS, icraPath)
+        cache.getAssertionChecks(key) match {
+          case Some(checks) => Some(checks)
+          case None =>
+            val checks = runAndGetStdOutput(sourceCode, timeout, icraPath, cancelled).map(icraOutput => parseAssertionChecks(icraOutput))
+            checks.foreach(c => cache.putAssertionChecks(key, c)) // Never cache time outs or errors
+            checks
+        }
+      case None =>
+        runAndGetStdOutput(sourceCode, timeout, icraPath, cancelled) match {
+          case Some(icraOutput) => Some(parseAssertionChecks(icraOutput))
+          case None => None
+        }
     }
   }
 
-  private def runAndGetStdOutput(sourceCode: String, timeout: Int, icraPath: String): Option[String] = {
-    val stdout = new StringBuilder
-    val stderr = new StringBuilder
-
-    val file = Files.createTempFile("prefix-", ".c")
-    new PrintWriter(file.toAbsolutePath.toString) {
-      write(sourceCode);
-      close()
-    }
-
-    // val cmd = s"""bash -c \"ulimit -H -v 1000000 && $ICRA_PATH -cra-split-loops -cra-prsd ${file.toAbsolutePath}\""""
-    // val cmd = s"""ulimit -H -v 1000000; $ICRA_PATH -cra-split-loops -cra-prsd ${file.toAbsolutePath}"""
-    val cmd = {
-      val timeoutPrefix = if (timeout >= 0) s"timeout ${timeout}s" else ""
-      s"$timeoutPrefix $icraPath -cra-split-loops -cra-prsd ${file.toAbsolutePath}"
+  /**
+   *
+   * @return The line number and the verdict of every assertion that ICRA checked
+   */
+  def runAndParseAssertionChecksPerLine(sourceCode: String, timeout: Int, icraPath: String): Option[List[(Int, Boolean)]] = {
+    cache match {
+      case Some(cache) =>
+        val key = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS_PER_LINE, sourceCode, ICRA_FLAGS, icraPath)
+        cache.getAssertionChecksPerLine(key) match {
+          case Some(checks) => Some(checks)
+          case None =>
+            val checks = runAndGetStdOutput(sourceCode, timeout, icraPath).map(icraOutput => parseAssertionChecksPerLine(icraOutput))
+            checks.foreach(c => cache.putAssertionChecksPerLine(key, c)) // Never cache time outs or errors
+            checks
+        }
+      case None => runAndGetStdOutput(sourceCode, timeout, icraPath).map(icraOutput => parseAssertionChecksPerLine(icraOutput))
     }
+  }
 
-    try {
-      // Set a timeout
-      // val status = cmd ! ProcessLogger(stdout append _, stderr append _)
-      val process = cmd.run(ProcessLogger(stdout append _, stderr append _))
-      val future = Future(blocking(process.exitValue())) // wrap in Future
-      val actualTimeout = {
-        if (timeout >= 0) Duration(timeout, SECONDS)
-        else Duration.Inf
-      }
-      val result = try {
-        Await.result(future, actualTimeout)
-      } catch {
-        case _: TimeoutException =>
-          logger.fatal(s"ICRA timed out after `$actualTimeout`!")
-          process.destroy()
-          process.exitValue()
-      }
-      if (result == 0) {
-        logger.trace(s"ICRA stdout:\n$stdout")
-        val removeFile = s"rm $file"
-        removeFile.!!
-        Some(stdout.toString())
-      }
-      else {
-        logger.fatal(s"Error when running ICRA. Exit code: `$result`")
-        logger.error(s"stderr:\n$stderr")
-        None
-      }
-    }
-    catch {
-      case e: Exception =>
-        logger.error(s"Exception when executing command `$cmd`", e)
-        logger.error(s"stdout:\n$stdout")
-        logger.error(s"stderr:\n$stderr")
-        throw new RuntimeException("Error when running ICRA")
-    }
+  private def runAndGetStdOutput(sourceCode: String, timeout: Int, icraPath: String,
+                                 cancelled: AtomicBoolean = new AtomicBoolean(false)): Option[String] = {
+    getLauncher.run(sourceCode, timeout, icraPath, ICRA_FLAGS, cancelled)
   }
 
+
   def parseInvariants(icraOutput: String): List[ParsedInvariant] = {
     val parser = new IcraParser(icraOutput)
     parser.extractRawInvariants.map({
@@ -112,6 +126,14 @@ object Icra {
     result.reverse
   }
 
+  private val ASSERTION_CHECK_REGEX = """\(Assertion on line (\d+) (PASSED|FAILED)\)""".r
+
+  def parseAssertionChecksPerLine(icraOutput: String): List[(Int, Boolean)] = {
+    ASSERTION_CHECK_REGEX.findAllMatchIn(icraOutput).map({
+      m => (m.group(1).toInt, m.group(2) == "PASSED")
+    }).toList
+  }
+
   def translateToZ3(icraAST: IcraAST, typ: BrboType, solver: Z3Solver): AST = translateToZ3AndCollectVariables(icraAST, typ, solver)._1
 
   def translateToZ3AndCollectVariables(icraAST: IcraAST, typ: BrboType, solver: Z3Solver): (AST, Set[String]) = {
@@ -0,0 +1,273 @@
+package brbo.common.icra
+
+import brbo.common.icra.IcraCache.{ASSERTION_CHECKS, ASSERTION_CHECKS_PER_LINE, CacheKey, INVARIANTS, logger}
+import brbo.common.instrument.InstrumentUtils
+import org.apache.commons.io.FileUtils
+import org.apache.logging.log4j.LogManager
+
+import java.io.{File, FileInputStream}
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, StandardCopyOption}
+import java.security.{DigestInputStream, MessageDigest}
+import scala.collection.immutable.HashMap
+import scala.util.matching.Regex
+
+/**
+ * A persistent cache of ICRA's results. An entry is keyed by the hash of the alpha-renamed C program, ICRA's flags and
+ * ICRA's binary. Entries are evicted in the least-recently-used order once the total size exceeds the cap.
+ *
+ * @param directory The directory that stores the cache entries (one file per entry)
+ * @param maxBytes  The maximum total size of all cache entries
+ */
+class IcraCache(directory: File, maxBytes: Long) {
+  // Iterate from the least recently used entry to the most recently used entry. Map digests to entry sizes
+  private val index = new java.util.LinkedHashMap[String, java.lang.Long](16, 0.75f, true)
+  private var totalBytes: Long = 0
+  private var hits: Int = 0
+  private var misses: Int = 0
+
+  FileUtils.forceMkdir(directory)
+  directory.listFiles().filter(file => file.isFile && file.getName.endsWith(IcraCache.ENTRY_EXTENSION))
+    .sortWith({ case (f1, f2) => f1.lastModified() < f2.lastModified() })
+    .foreach({
+      file =>
+        index.put(file.getName.stripSuffix(IcraCache.ENTRY_EXTENSION), file.length())
+        totalBytes = totalBytes + file.length()
+    })
+  logger.info(s"ICRA cache `${directory.getAbsolutePath}` has `${index.size()}` entries (`$totalBytes` bytes)")
+
+  def getAssertionChecks(key: CacheKey): Option[List[Boolean]] = {
+    assert(key.kind == ASSERTION_CHECKS)
+    get(key).map(payload => payload.split("\n").filter(line => line.nonEmpty).map(line => line.toBoolean).toList)
+  }
+
+  def putAssertionChecks(key: CacheKey, checks: List[Boolean]): Unit = {
+    assert(key.kind == ASSERTION_CHECKS)
+    put(key, checks.mkString("\n"))
+  }
+
+  def getAssertionChecksPerLine(key: CacheKey): Option[List[(Int, Boolean)]] = {
+    assert(key.kind == ASSERTION_CHECKS_PER_LINE)
+    get(key).map({
+      payload =>
+        payload.split("\n").filter(line => line.nonEmpty).map({
+          line =>
+            val Array(lineNumber, verdict) = line.split(",")
+            (lineNumber.toInt, verdict.toBoolean)
+        }).toList
+    })
+  }
+
+  def putAssertionChecksPerLine(key: CacheKey, checks: List[(Int, Boolean)]): Unit = {
+    assert(key.kind == ASSERTION_CHECKS_PER_LINE)
+    put(key, checks.map({ case (lineNumber, verdict) => s"$lineNumber,$verdict" }).mkString("\n"))
+  }
+
+  /**
+   *
+   * @return ICRA's output, where variable names are the names in the program from which the key was computed
+   */
+  def getInvariants(key: CacheKey): Option[String] = {
+    assert(key.kind == INVARIANTS)
+    get(key).map(payload => IcraCache.rename(payload, key.renaming.map(_.swap)))
+  }
+
+  def putInvariants(key: CacheKey, icraOutput: String): Unit = {
+    assert(key.kind == INVARIANTS)
+    put(key, IcraCache.rename(icraOutput, key.renaming))
+  }
+
+  def statistics: String = this.synchronized {
+    s"ICRA cache - Hits: `$hits`. Misses: `$misses`. Entries: `${index.size()}`. Size: `$totalBytes` bytes"
+  }
+
+  private def get(key: CacheKey): Option[String] = this.synchronized {
+    val payload: Option[String] = {
+      if (!index.containsKey(key.digest)) None
+      else {
+        val file = entryFile(key.digest)
+        try {
+          val contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8)
+          val (header, body) = contents.indexOf("\n") match {
+            case -1 => (contents, "")
+            case i => (contents.substring(0, i), contents.substring(i + 1))
+          }
+          if (header != key.kind) {
+            logger.error(s"ICRA cache entry `${file.getAbsolutePath}` has kind `$header`. Expected `${key.kind}`")
+            remove(key.digest)
+            None
+          }
+          else {
+            index.get(key.digest) // Mark as the most recently used
+            file.setLastModified(System.currentTimeMillis())
+            Some(body)
+          }
+        }
+        catch {
+          case e: java.io.IOException =>
+            logger.error(s"Failed to read ICRA cache entry `${file.getAbsolutePath}`", e)
+            remove(key.digest)
+            None
+        }
+      }
+    }
+    payload match {
+      case Some(_) =>
+        hits = hits + 1
+        logger.trace(s"ICRA cache hit `${key.digest}`")
+      case None => misses = misses + 1
+    }
+    payload
+  }
+
+  private def put(key: CacheKey, payload: String): Unit = this.synchronized {
+    val file = entryFile(key.digest)
+    val written = {
+      try {
+        // Write to a temporary file first, such that readers never observe partially written entries
+        val temporaryFile = Files.createTempFile(directory.toPath, key.digest, ".tmp")
+        Files.write(temporaryFile, s"${key.kind}\n$payload".getBytes(StandardCharsets.UTF_8))
+        Files.move(temporaryFile, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        true
+      }
+      catch {
+        case e: java.io.IOException =>
+          logger.error(s"Failed to write ICRA cache entry `${file.getAbsolutePath}`", e)
+          false
+      }
+    }
+    if (written) {
+      val previous = index.put(key.digest, file.length())
+      if (previous != null) totalBytes = totalBytes - previous.longValue()
+      totalBytes = totalBytes + file.length()
+      evict()
+    }
+  }
+
+  private def evict(): Unit = {
+    val iterator = index.entrySet().iterator()
+    while (totalBytes > maxBytes && iterator.hasNext) {
+      val entry = iterator.next()
+      iterator.remove()
+      totalBytes = totalBytes - entry.getValue.longValue()
+      FileUtils.deleteQuietly(entryFile(entry.getKey))
+      logger.trace(s"Evict ICRA cache entry `${entry.getKey}`")
+    }
+  }
+
+  private def remove(digest: String): Unit = {
+    val size = index.remove(digest)
+    if (size != null) totalBytes = totalBytes - size.longValue()
+    FileUtils.deleteQuietly(entryFile(digest))
+  }
+
+  private def entryFile(digest: String): File = new File(directory, s"$digest${IcraCache.ENTRY_EXTENSION}")
+}
+
+object IcraCache {
+  private val logger = LogManager.getLogger("brbo.common.icra.IcraCache")
+
+  val ASSERTION_CHECKS = "ASSERTION_CHECKS"
+  val ASSERTION_CHECKS_PER_LINE = "ASSERTION_CHECKS_PER_LINE"
+  val INVARIANTS = "INVARIANTS"
+
+  val DEFAULT_MAX_MEGABYTES = 512
+
+  // Under the output directory of Brbo
+  val DEFAULT_DIRECTORY: String = s"${System.getProperty("user.dir")}/output/icra-cache"
+
+  private val ENTRY_EXTENSION = ".icra"
+  private val CANONICAL_PREFIX = "__brbo_v"
+  private val IDENTIFIER: Regex = """\b[A-Za-z_][A-Za-z0-9_]*""".r
+  // Identifiers whose meanings do not depend on the program, and hence are never renamed
+  private val RESERVED: Set[String] = Set(
+    "auto", "break", "case", "char", "const", "continue", "default", "do", "double", "else", "enum", "extern", "float",
+    "for", "goto", "if", "inline", "int", "long", "register", "restrict", "return", "short", "signed", "sizeof", "static",
+    "struct", "switch", "typedef", "union", "unsigned", "void", "volatile", "while", "_Bool", "define", "__attribute__",
+    "noreturn"
+  ) ++ InstrumentUtils.cFileBuiltins
+
+  private var binaryVersions = new HashMap[String, String]
+
+  /**
+   *
+   * @param kind     One of `ASSERTION_CHECKS`, `ASSERTION_CHECKS_PER_LINE` and `INVARIANTS`
+   * @param digest   The hash of the alpha-renamed program, ICRA's flags and ICRA's binary
+   * @param renaming A mapping from identifiers in the original program to identifiers in the alpha-renamed program
+   */
+  case class CacheKey(kind: String, digest: String, renaming: Map[String, String])
+
+  def computeKey(kind: String, sourceCode: String, icraFlags: String, icraPath: String): CacheKey = {
+    val (normalized, renaming) = normalize(sourceCode)
+    val digest = sha256(List(kind, icraFlags, binaryVersion(icraPath), normalized).mkString("\u0000"))
+    CacheKey(kind, digest, renaming)
+  }
+
+  /**
+   *
+   * @return The program where all identifiers, except C keywords and builtins, are consistently renamed in the order of
+   *         their first occurrences, and the renaming. Alpha-equivalent programs are normalized into the same string
+   */
+  def normalize(sourceCode: String): (String, Map[String, String]) = {
+    var renaming = new HashMap[String, String]
+    val normalized = IDENTIFIER.replaceAllIn(sourceCode, {
+      m: Regex.Match =>
+        val identifier = m.matched
+        renaming.get(identifier) match {
+          case Some(canonical) => canonical
+          case None if RESERVED.contains(identifier) => identifier
+          case None =>
+            val canonical = s"$CANONICAL_PREFIX${renaming.size}"
+            renaming = renaming + (identifier -> canonical)
+            canonical
+        }
+    })
+    (normalized, renaming)
+  }
+
+  def rename(string: String, renaming: Map[String, String]): String = {
+    IDENTIFIER.replaceAllIn(string, {
+      m: Regex.Match =>
+        val identifier = m.matched
+        Regex.quoteReplacement(renaming.getOrElse(identifier, identifier))
+    })
+  }
+
+  /**
+   *
+   * @return The hash of ICRA's binary, which is computed at most once for each path
+   */
+  def binaryVersion(icraPath: String): String = this.synchronized {
+    binaryVersions.get(icraPath) match {
+      case Some(version) => version
+      case None =>
+        val file = new File(icraPath)
+        val version = {
+          if (!file.isFile) {
+            logger.error(s"Cannot find ICRA binary `$icraPath` to compute its version")
+            "unknown"
+          }
+          else {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val inputStream = new DigestInputStream(new FileInputStream(file), digest)
+            try {
+              val buffer = new Array[Byte](1 << 16)
+              while (inputStream.read(buffer) != -1) {}
+            }
+            finally {
+              inputStream.close()
+            }
+            toHex(digest.digest())
+          }
+        }
+        binaryVersions = binaryVersions + (icraPath -> version)
+        version
+    }
+  }
+
+  private def sha256(string: String): String = {
+    toHex(MessageDigest.getInstance("SHA-256").digest(string.getBytes(StandardCharsets.UTF_8)))
+  }
+
+  private def toHex(bytes: Array[Byte]): String = bytes.map(b => "%02x".format(b)).mkString
+}
@@ -0,0 +1,184 @@
+package brbo.common.icra
+
+import brbo.common.icra.IcraLauncher.{RunningProcess, logger}
+import org.apache.commons.io.FileUtils
+import org.apache.logging.log4j.LogManager
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicLong}
+import scala.collection.JavaConverters._
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Promise}
+
+/**
+ * Launch ICRA processes with at most `maxConcurrentProcesses` processes running at the same time.
+ *
+ * Input programs are written to a scratch directory that is private to this launcher, and are deleted in batches. A
+ * single thread polls all running processes for their exits, time outs and cancellations, instead of parking a thread
+ * per process.
+ * Every process runs in its own process group, such that a time out kills ICRA and all processes that ICRA started.
+ *
+ * @param scratchRoot            The directory under which the scratch directory is created
+ * @param maxConcurrentProcesses The maximum number of ICRA processes that run at the same time
+ */
+class IcraLauncher(scratchRoot: File, maxConcurrentProcesses: Int) {
+  private val scratchDirectory: File = Files.createTempDirectory(scratchRoot.toPath, "brbo-icra-").toFile
+  private val permits = new Semaphore(Math.max(maxConcurrentProcesses, 1))
+  private val nextId = new AtomicLong(0)
+  private val runningProcesses = new ConcurrentLinkedQueue[RunningProcess]
+  private val finishedFiles = new ConcurrentLinkedQueue[File]
+  private val numberOfFinishedFiles = new AtomicInteger(0)
+
+  private val reaper = Executors.newSingleThreadScheduledExecutor({
+    runnable: Runnable =>
+      val thread = new Thread(runnable, "icra-reaper")
+      thread.setDaemon(true)
+      thread
+  })
+  reaper.scheduleWithFixedDelay(() => reap(), IcraLauncher.POLL_INTERVAL, IcraLauncher.POLL_INTERVAL, TimeUnit.MILLISECONDS)
+
+  sys.addShutdownHook(shutdown())
+  logger.info(s"ICRA scratch directory: `${scratchDirectory.getAbsolutePath}`. At most `$maxConcurrentProcesses` concurrent ICRA processes")
+
+  /**
+   *
+   * @param timeout   Unit: Seconds. Negative numbers mean no timeout
+   * @param cancelled Once set, ICRA is killed (or never launched)
+   * @return ICRA's stdout (where lines are concatenated without line breaks), or None if ICRA failed, timed out or
+   *         was cancelled
+   */
+  def run(sourceCode: String, timeout: Int, icraPath: String, icraFlags: String,
+          cancelled: AtomicBoolean = new AtomicBoolean(false)): Option[String] = {
+    val id = nextId.getAndIncrement()
+    val sourceFile = new File(scratchDirectory, s"$id.c")
+    val stdoutFile = new File(scratchDirectory, s"$id.stdout")
+    val stderrFile = new File(scratchDirectory, s"$id.stderr")
+    val pidFile = new File(scratchDirectory, s"$id.pid")
+    // `setsid` makes the process a process group leader. Then `sh` records the process id (which is also the process
+    // group id) and becomes ICRA. Neither `setsid` nor `sh` forks, so they all share the same process id
+    val command = List("setsid", "sh", "-c", "echo $$ > \"$0\"; exec \"$@\"", pidFile.getAbsolutePath, icraPath) ++
+      icraFlags.split(" ").filter(flag => flag.nonEmpty) :+ sourceFile.getAbsolutePath
+
+    permits.acquire()
+    try {
+      if (cancelled.get()) return None
+
+      Files.write(sourceFile.toPath, sourceCode.getBytes(StandardCharsets.UTF_8))
+      val process = new ProcessBuilder(command.asJava)
+        .redirectOutput(stdoutFile)
+        .redirectError(stderrFile)
+        .start()
+      val deadline = if (timeout >= 0) Some(System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout)) else None
+      val exit = Promise[Option[Int]]()
+      runningProcesses.add(RunningProcess(process, deadline, cancelled, pidFile, exit))
+
+      Await.result(exit.future, Duration.Inf) match {
+        case Some(0) =>
+          val stdout = readLines(stdoutFile).mkString
+          logger.trace(s"ICRA stdout:\n$stdout")
+          Some(stdout)
+        case Some(exitCode) =>
+          logger.fatal(s"Error when running ICRA. Exit code: `$exitCode`")
+          logger.error(s"stderr:\n${readLines(stderrFile).mkString("\n")}")
+          None
+        case None =>
+          if (cancelled.get()) logger.trace(s"ICRA was cancelled")
+          else logger.fatal(s"ICRA timed out after `$timeout` seconds!")
+          None
+      }
+    }
+    catch {
+      case e: Exception =>
+        logger.error(s"Exception when executing command `${command.mkString(" ")}`", e)
+        throw new RuntimeException("Error when running ICRA")
+    }
+    finally {
+      permits.release()
+      cleanUp(List(sourceFile, stdoutFile, stderrFile, pidFile))
+    }
+  }
+
+  def shutdown(): Unit = {
+    reaper.shutdownNow()
+    runningProcesses.asScala.foreach({
+      runningProcess =>
+        kill(runningProcess)
+        runningProcess.exit.trySuccess(None)
+    })
+    runningProcesses.clear()
+    FileUtils.deleteQuietly(scratchDirectory)
+  }
+
+  private def reap(): Unit = {
+    try {
+      val iterator = runningProcesses.iterator()
+      while (iterator.hasNext) {
+        val runningProcess = iterator.next()
+        if (!runningProcess.process.isAlive) {
+          iterator.remove()
+          runningProcess.exit.trySuccess(Some(runningProcess.process.exitValue()))
+        }
+        else if (runningProcess.cancelled.get() || runningProcess.deadline.exists(deadline => System.nanoTime() > deadline)) {
+          iterator.remove()
+          kill(runningProcess)
+          runningProcess.exit.trySuccess(None)
+        }
+      }
+    }
+    catch {
+      // An exception would silently cancel all future executions of the reaper
+      case e: Exception => logger.error(s"Exception when polling ICRA processes", e)
+    }
+  }
+
+  private def kill(runningProcess: RunningProcess): Unit = {
+    readLines(runningProcess.pidFile).headOption.map(line => line.trim) match {
+      case Some(processGroupId) if processGroupId.nonEmpty =>
+        new ProcessBuilder("kill", "-KILL", "--", s"-$processGroupId").start().waitFor()
+      case _ =>
+    }
+    runningProcess.process.destroyForcibly()
+  }
+
+  private def cleanUp(files: List[File]): Unit = {
+    files.foreach(file => finishedFiles.add(file))
+    if (numberOfFinishedFiles.addAndGet(files.size) >= IcraLauncher.CLEAN_UP_BATCH_SIZE) {
+      numberOfFinishedFiles.set(0)
+      var file = finishedFiles.poll()
+      while (file != null) {
+        FileUtils.deleteQuietly(file)
+        file = finishedFiles.poll()
+      }
+    }
+  }
+
+  private def readLines(file: File): List[String] = {
+    if (file.isFile) Files.readAllLines(file.toPath, StandardCharsets.UTF_8).asScala.toList
+    else Nil
+  }
+}
+
+object IcraLauncher {
+  private val logger = LogManager.getLogger("brbo.common.icra.IcraLauncher")
+
+  private val POLL_INTERVAL = 20 // Unit: Milliseconds
+  private val CLEAN_UP_BATCH_SIZE = 256 // Unit: Files
+
+  private case class RunningProcess(process: Process, deadline: Option[Long], cancelled: AtomicBoolean, pidFile: File,
+                                    exit: Promise[Option[Int]])
+
+  /**
+   *
+   * @return `/dev/shm` (which is backed by memory) if it is available, and the default temporary directory otherwise
+   */
+  def defaultScratchRoot: File = {
+    val sharedMemory = new File("/dev/shm")
+    if (sharedMemory.isDirectory && sharedMemory.canWrite) sharedMemory
+    else new File(System.getProperty("java.io.tmpdir"))
+  }
+
+  def defaultMaxConcurrentProcesses: Int = Runtime.getRuntime.availableProcessors()
+}
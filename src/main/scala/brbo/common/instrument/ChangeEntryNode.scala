@@ -48,7 +48,7 @@ object ChangeEntryNode {
       val enclosingTree = enclosingTrees(enclosingTrees.size - 2)
       enclosingTree match {
         case tree: BlockTree =>
-          val enclosingLoop = TreeUtils.getMinimalEnclosingLoop(inputMethod.getPath(tree))
+          val enclosingLoop = inputMethod.loopForest.minimalEnclosingLoop(tree)
           var foundEntryTree = false
           var node: FatNode = EmptyNode
           val statements = tree.getStatements.asScala
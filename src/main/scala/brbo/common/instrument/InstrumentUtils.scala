@@ -311,6 +311,37 @@ object InstrumentUtils {
     }
   }
 
+  /**
+   *
+   * @param targetMethod    The method whose body will be replaced
+   * @param newMethodBodies The new method bodies. Each body becomes an independent copy of the method
+   * @return A C program where `main` nondeterministically invokes exactly one copy, such that a failing assertion in
+   *         one copy does not affect assertions in other copies, and the (inclusive) line ranges of all copies
+   */
+  def replaceMethodBodiesAndGeneratePackedCSourceCode(targetMethod: TargetMethod, newMethodBodies: List[String]): (String, List[(Int, Int)]) = {
+    val parameters = targetMethod.inputVariables.toList
+    val parameterDeclarations = parameters.map(pair => BrboType.variableDeclaration(pair._1, pair._2)).mkString(", ")
+    val returnType = BrboType.toString(targetMethod.returnType, C_FORMAT)
+
+    val builder = new StringBuilder(s"$cFilePrefix\n")
+    var numberOfLines = cFilePrefix.count(c => c == '\n') + 1
+    val lineRanges = newMethodBodies.zipWithIndex.map({
+      case (newMethodBody, index) =>
+        val copy = s"$returnType $PACKED_FUNCTION_PREFIX$index($parameterDeclarations)\n$newMethodBody\n"
+        builder.append(copy)
+        val firstLine = numberOfLines + 1
+        numberOfLines = numberOfLines + copy.count(c => c == '\n')
+        (firstLine, numberOfLines)
+    })
+
+    val arguments = parameters.map(pair => pair._1).mkString(", ")
+    val dispatch = newMethodBodies.indices.map({
+      index => s"if ($PACKED_CHOICE == $index) { $PACKED_FUNCTION_PREFIX$index($arguments); }"
+    }).mkString("\n  else ")
+    builder.append(s"void main($parameterDeclarations) {\n  int $PACKED_CHOICE = ndInt();\n  $dispatch\n}")
+    (builder.toString(), lineRanges)
+  }
+
   /**
    *
    * @param targetMethod    The method to be instrumented
@@ -389,6 +420,9 @@ object InstrumentUtils {
   }
 
 
+  private val PACKED_FUNCTION_PREFIX = "brbo_copy_"
+  private val PACKED_CHOICE = "brbo_choice"
+
   private val cFilePrefix =
     s"""extern void __VERIFIER_error() __attribute__((noreturn));
        |extern void __VERIFIER_assume (int);
@@ -427,6 +461,11 @@ object InstrumentUtils {
        |}
        |""".stripMargin
 
+  // Functions and macros that are declared in `cFilePrefix`
+  val cFileBuiltins: Set[String] = Set("__VERIFIER_error", "__VERIFIER_assume", "__VERIFIER_nondet_int", "__VERIFIER_assert",
+    "static_assert", "assume", "assert", "LARGE_INT", "true", "false", "boolean", BoundChecking.MAX_COEFFICIENT,
+    "ndInt", "ndBool", "ndInt2")
+
   def appendSemiColon(string: String): String = {
     if (string == "") ""
     else if (string.endsWith(";")) s"$string"
@@ -1,5 +1,6 @@
 package brbo.common.javac
 
+import com.sun.tools.javac.file.JavacFileManager
 import com.sun.tools.javac.main.JavaCompiler
 import com.sun.tools.javac.util.{Context, List, Options}
 import org.apache.logging.log4j.LogManager
@@ -10,13 +11,21 @@ import java.net.URI
 import java.util
 import javax.annotation.processing.Processor
 import javax.tools.JavaFileObject.Kind
-import javax.tools.SimpleJavaFileObject
+import javax.tools.{JavaFileManager, SimpleJavaFileObject}
 
 object JavacUtils {
   private val logger = LogManager.getLogger("brbo.common.JavacUtils")
 
   val commonClassQualifiedName = "brbo.benchmarks.Common"
 
+  // A file manager caches the indices of the archives that it opens (e.g., `rt.jar` and the jars on the class path), which
+  // are otherwise re-read by every compilation. Contexts (and hence symbols) cannot be shared between compilations, but
+  // file managers can. A file manager is not thread safe, so a compilation takes a file manager out of the pool and returns
+  // it afterwards, regardless of which (possibly short-lived) thread runs the compilation. File managers beyond the
+  // capacity of the pool are closed
+  private val idleFileManagers = new util.ArrayDeque[JavacFileManager]
+  private val MAX_IDLE_FILE_MANAGERS = Runtime.getRuntime.availableProcessors()
+
   def runCFGProcessor(className: String, methodName: String, sourceFileName: String, sourceCode: String): ControlFlowGraph = {
     val cfgProcessor = new CFGProcessor(className, methodName)
     runProcessor(sourceFileName, sourceCode, cfgProcessor)
@@ -33,9 +42,14 @@ object JavacUtils {
     res.getCFG
   }
 
-  def runProcessor(compilationUnitName: String, sourceCode: String, processor: Processor): Unit = {
+  /**
+   *
+   * @param shareFileManager Whether to reuse a file manager from previous compilations
+   */
+  def runProcessor(compilationUnitName: String, sourceCode: String, processor: Processor, shareFileManager: Boolean = true): Unit = {
     val context = new Context
     Options.instance(context).put("compilePolicy", "ATTR_ONLY")
+    val fileManager = if (shareFileManager) Some(acquireFileManager(context)) else None
     val javac = new JavaCompiler(context)
     // val bytesErr = new ByteArrayOutputStream()
     // val bytesOut = new ByteArrayOutputStream()
@@ -76,7 +90,43 @@ object JavacUtils {
     finally {
       // System.setErr(oldErrStream)
       // System.setOut(oldOutStream)
+      fileManager.foreach(releaseFileManager)
+    }
+  }
+
+  /**
+   * Close all file managers that are not used by any compilation, e.g., when there will be no more compilations
+   */
+  def closeFileManagers(): Unit = {
+    val fileManagers = idleFileManagers.synchronized {
+      val fileManagers = idleFileManagers.toArray(new Array[JavacFileManager](0))
+      idleFileManagers.clear()
+      fileManagers
+    }
+    fileManagers.foreach(fileManager => fileManager.close())
+  }
+
+  def numberOfIdleFileManagers: Int = idleFileManagers.synchronized(idleFileManagers.size())
+
+  private def acquireFileManager(context: Context): JavacFileManager = {
+    idleFileManagers.synchronized(idleFileManagers.pollFirst()) match {
+      case null => new JavacFileManager(context, true, null) // Registered in the context when constructed
+      case fileManager =>
+        fileManager.setContext(context) // Report diagnostics to, and read options from, the new context
+        context.put(classOf[JavaFileManager], fileManager: JavaFileManager)
+        fileManager
+    }
+  }
+
+  private def releaseFileManager(fileManager: JavacFileManager): Unit = {
+    val pooled = idleFileManagers.synchronized {
+      if (idleFileManagers.size() < MAX_IDLE_FILE_MANAGERS) {
+        idleFileManagers.addFirst(fileManager) // The most recently used file manager is reused first
+        true
+      }
+      else false
     }
+    if (!pooled) fileManager.close()
   }
 
   private def createJavaList[T](elements: T*): java.util.List[T] = {
@@ -106,6 +106,18 @@ class BasicProcessor extends BasicTypeProcessor {
     getLineNumber(node, positions.get, rootTree.get).toInt
   }
 
+  /**
+   *
+   * @return The number of lines that the tree spans in the source code
+   */
+  def getNumberOfLines(node: Tree): Int = {
+    val root = rootTree.get
+    val lineMap = root.getLineMap
+    val startLine = lineMap.getLineNumber(positions.get.getStartPosition(root, node))
+    val endLine = lineMap.getLineNumber(positions.get.getEndPosition(root, node))
+    (endLine - startLine + 1).toInt
+  }
+
   private def getFileName: String = rootTree.get.getSourceFile.getName
 
   def getClasses: HashMap[ClassTree, Set[MethodTree]] = classes
@@ -116,9 +128,12 @@ class BasicProcessor extends BasicTypeProcessor {
 
   def getSourceCode: String = sourceCode.get
 
-  def assumeOneClassOneMethod(): Unit = {
-    assert(getClasses.size == 1, s"We should analyze exactly one class. Instead, we have `$getClasses`")
-    assert(getMethods.size == 1, s"We should analyze exactly one method. Instead, we have `$getMethods`")
+  /**
+   *
+   * @return Methods and their CFGs, in the order of their positions in the source code
+   */
+  def getMethodsInSourceOrder: List[(MethodTree, ControlFlowGraph)] = {
+    getMethods.toList.sortBy({ case (methodTree, _) => positions.get.getStartPosition(rootTree.get, methodTree) })
   }
 
   def getPath(tree: Tree): TreePath = trees.get.getPath(rootTree.get, tree)
@@ -127,6 +142,13 @@ class BasicProcessor extends BasicTypeProcessor {
 object BasicProcessor {
   private val logger = LogManager.getLogger("brbo.verification.BasicProcessor")
 
+  // Programs that are compiled again (e.g., subprograms and programs with changed entry nodes) are not recompiled
+  @volatile private var targetMethodCache: Option[TargetMethodCache] = Some(new TargetMethodCache(TargetMethodCache.DEFAULT_MAX_ENTRIES))
+
+  def setTargetMethodCache(newCache: Option[TargetMethodCache]): Unit = targetMethodCache = newCache
+
+  def getTargetMethodCache: Option[TargetMethodCache] = targetMethodCache
+
   private def run(className: String, sourceFileContents: String): BasicProcessor = {
     val basicProcessor = new BasicProcessor
     try {
@@ -143,12 +165,34 @@ object BasicProcessor {
   /**
    *
    * @param className          The class name
-   * @param sourceFileContents Java source code that contains a class, which defines exactly 1 method
+   * @param sourceFileContents Java source code that defines exactly 1 method
    * @return The method in the Java source code
    */
   def getTargetMethod(className: String, sourceFileContents: String): TargetMethod = {
+    def compute: TargetMethod = {
+      val targetMethods = getTargetMethods(className, sourceFileContents)
+      assert(targetMethods.size == 1, s"We should analyze exactly one method. Instead, we have `${targetMethods.map(t => t.methodTree.getName)}`")
+      targetMethods.head
+    }
+
+    targetMethodCache match {
+      case Some(cache) => cache.getOrCompute(className, sourceFileContents)(compute)
+      case None => compute
+    }
+  }
+
+  /**
+   *
+   * @param className          The class name
+   * @param sourceFileContents Java source code, which is compiled once for all methods
+   * @param filter             Which methods to build target methods for
+   * @return The methods in the Java source code that satisfy the filter, in the order of their positions
+   */
+  def getTargetMethods(className: String, sourceFileContents: String, filter: MethodTree => Boolean = _ => true): List[TargetMethod] = {
     val processor = run(className, sourceFileContents)
-    processor.assumeOneClassOneMethod()
-    TargetMethod(className, processor.getMethods.head._1, processor.getMethods.head._2, processor.getLineNumber, processor.getPath, processor.getSourceCode)
+    processor.getMethodsInSourceOrder.filter({ case (methodTree, _) => filter(methodTree) }).map({
+      case (methodTree, cfg) => TargetMethod(className, methodTree, cfg, processor.getLineNumber, processor.getPath, processor.getSourceCode,
+        processor.getNumberOfLines(methodTree))
+    })
   }
 }
\ No newline at end of file
@@ -153,8 +153,8 @@ object BoundChecking {
         Future {
           val globalInvariantFuture = Future {
             logger.info(s"Infer invariant for the peak value of delta variable `$deltaVariable`. Max degree: `$MAX_DEGREE_DELTA`")
-            boundInference.inferBound(
-              solver,
+            runWithOwnSolver(solver)(taskSolver => boundInference.inferBound(
+              taskSolver,
               Locations(
                 {
                   case expressionStatementTree: ExpressionStatementTree =>
@@ -174,14 +174,14 @@ object BoundChecking {
               deltaVariable,
               MAX_DEGREE_DELTA
               // allVariables
-            )
+            ))
           }
 
           // TODO: It seems that ICRA cannot infer strong invariants right before `D=0`
           val accumulationInvariantFuture = Future {
             logger.info(s"Infer invariant for the accumulation of delta variable `$deltaVariable` (per visit to its subprogram). Max degree: `$MAX_DEGREE_DELTA`")
-            boundInference.inferBound(
-              solver,
+            runWithOwnSolver(solver)(taskSolver => boundInference.inferBound(
+              taskSolver,
               Locations(
                 {
                   case expressionStatementTree: ExpressionStatementTree =>
@@ -202,7 +202,7 @@ object BoundChecking {
               MAX_DEGREE_DELTA
               // deltaVariable,
               // allVariables
-            )
+            ))
           }
 
           /*val isCounterUpdateInLoop: Boolean = {
@@ -253,8 +253,8 @@ object BoundChecking {
             }
             else {*/
             logger.info(s"Infer invariants for AST counter `$counterVariable` with ICRA. Max degree: `$MAX_DEGREE_COUNTER`")
-            boundInference.inferBound(
-              solver,
+            runWithOwnSolver(solver)(taskSolver => boundInference.inferBound(
+              taskSolver,
               Locations(
                 {
                   tree: Tree => if (tree == lastTree) true else false
@@ -272,7 +272,7 @@ object BoundChecking {
               counterVariable,
               MAX_DEGREE_COUNTER
               // allVariables
-            )
+            ))
             //}
           }
 
@@ -460,8 +460,8 @@ object BoundChecking {
       try {
         logger.info(s"Discharge bound check query to Z3")
         val result = {
-          !Z3Solver.checkSATCommandLine(solver)
-          // !solver.checkSAT(printUnsatCore = false)
+          if (arguments.getZ3CommandLine) !Z3Solver.checkSATCommandLine(solver)
+          else !solver.checkSATWithInterruption(printUnsatCore = false, Z3Solver.Z3_TIMEOUT)
         }
         if (!result) {
           if (isImportant || arguments.getPrintCounterExample) {
@@ -501,12 +501,13 @@ object BoundChecking {
     if (skip) return
 
     logger.info(message)
-    solver.push()
-    solver.mkAssert(ast)
+    // Check with a separate solver, such that sanity checks run in parallel without contending on the same Z3 context
+    val taskSolver = new Z3Solver
+    taskSolver.mkAssert(taskSolver.translate(ast, solver))
     try {
-      val result = solver.checkSAT(printUnsatCore = false)
+      val result = taskSolver.checkSAT(printUnsatCore = false)
       if (expect) assert(result)
-      else assert(!result, solver.printModel())
+      else assert(!result, taskSolver.printModel())
     }
     catch {
       case e: Z3UnknownException =>
@@ -519,7 +520,24 @@ object BoundChecking {
       case e: Exception =>
         logger.fatal(s"Bound check - Unknown exception when running Z3: ${e.getMessage}")
     }
-    solver.pop()
+    finally {
+      taskSolver.close()
+    }
+  }
+
+  /**
+   * Run a task with its own solver, such that concurrent tasks do not contend on the same Z3 context
+   *
+   * @return The AST computed by the task, translated into the context of `solver`
+   */
+  private def runWithOwnSolver(solver: Z3Solver)(task: Z3Solver => BoolExpr): BoolExpr = {
+    val taskSolver = new Z3Solver
+    try {
+      solver.translate(task(taskSolver), taskSolver)
+    }
+    finally {
+      taskSolver.close()
+    }
   }
 
   def ensureNoAssertion(methodTree: MethodTree): Unit = {
@@ -529,23 +547,33 @@ object BoundChecking {
     })
   }
 
+  private def findCommand(commands: Iterable[StatementTree], methodToMatch: String): Iterable[StatementTree] = {
+    commands.filter({
+      case expressionStatementTree: ExpressionStatementTree =>
+        expressionStatementTree.getExpression match {
+          case methodInvocationTree: MethodInvocationTree =>
+            val methodSelect = methodInvocationTree.getMethodSelect.toString
+            if (methodSelect == methodToMatch) true
+            else false
+          case _ => false
+        }
+      case _ => false
+    })
+  }
+
+  /**
+   *
+   * @return If the method specifies a bound (i.e., invokes `mostPreciseBound`) to verify
+   */
+  def specifiesBound(methodTree: MethodTree): Boolean = {
+    val methodBody = methodTree.getBody
+    if (methodBody == null) false
+    else findCommand(collectCommands(methodBody), MOST_PRECISE_BOUND).nonEmpty
+  }
+
   def extractBoundExpression(solver: Z3Solver, methodTree: MethodTree, typeContext: Map[String, BrboType], lessPrecise: Boolean): AST = {
     logger.info(s"""Extract the ${if (lessPrecise) "less" else "most"} precise bound""")
 
-    def findCommand(commands: Iterable[StatementTree], methodToMatch: String): Iterable[StatementTree] = {
-      commands.filter({
-        case expressionStatementTree: ExpressionStatementTree =>
-          expressionStatementTree.getExpression match {
-            case methodInvocationTree: MethodInvocationTree =>
-              val methodSelect = methodInvocationTree.getMethodSelect.toString
-              if (methodSelect == methodToMatch) true
-              else false
-            case _ => false
-          }
-        case _ => false
-      })
-    }
-
     def assumeExactOneBound(n: Int): Unit = {
       assert(n == 1, s"Please verify exactly 1 bound expression. Instead, we have `$n` bound expression(s)")
     }
@@ -0,0 +1,96 @@
+package brbo.verification
+
+import brbo.common.TargetMethod
+import brbo.verification.TargetMethodCache.{Key, logger}
+import org.apache.logging.log4j.LogManager
+
+import java.lang.ref.SoftReference
+import java.util
+
+/**
+ * An in-memory cache of target methods, keyed by class names and source code, such that compiling the same program
+ * again (e.g., the same subprogram across iterations of decomposition) returns the target method that is already built.
+ * Entries are evicted in the least-recently-used order once there are more entries than the cap. The cap is on the number
+ * of entries, because a target method keeps its whole compilation (i.e., ASTs and javac's context) reachable, whose size
+ * barely depends on the size of the source code. Target methods are softly referenced, such that the garbage collector
+ * may also reclaim them under memory pressure. Thread safe
+ *
+ * @param maxEntries The maximum number of cached target methods
+ */
+class TargetMethodCache(maxEntries: Int) {
+  // Iterate from the least recently used entry to the most recently used entry
+  private val entries = new util.LinkedHashMap[Key, SoftReference[TargetMethod]](16, 0.75f, true)
+  private var hits: Int = 0
+  private var misses: Int = 0
+  private var evictions: Int = 0
+
+  /**
+   *
+   * @param compute Build the target method, if it is not cached. Not run while holding the lock of the cache
+   * @return The cached target method, or the newly built target method
+   */
+  def getOrCompute(className: String, sourceCode: String)(compute: => TargetMethod): TargetMethod = {
+    val key = Key(className, sourceCode)
+    get(key) match {
+      case Some(targetMethod) => targetMethod
+      case None =>
+        val targetMethod = compute
+        put(key, new SoftReference(targetMethod))
+        targetMethod
+    }
+  }
+
+  def statistics: String = this.synchronized {
+    s"Target method cache - Hits: `$hits`. Misses: `$misses`. Evictions: `$evictions`. Entries: `${entries.size()}` (at most `$maxEntries`)"
+  }
+
+  def getHits: Int = this.synchronized(hits)
+
+  def getMisses: Int = this.synchronized(misses)
+
+  def clear(): Unit = this.synchronized {
+    entries.clear()
+  }
+
+  private def get(key: Key): Option[TargetMethod] = this.synchronized {
+    val result: Option[TargetMethod] = entries.get(key) match { // Mark as the most recently used
+      case null => None
+      case reference =>
+        reference.get() match {
+          case null => // Reclaimed by the garbage collector
+            entries.remove(key)
+            None
+          case targetMethod => Some(targetMethod)
+        }
+    }
+    result match {
+      case Some(_) =>
+        hits = hits + 1
+        logger.trace(s"Target method cache hit `${key.className}`")
+      case None => misses = misses + 1
+    }
+    result
+  }
+
+  private def put(key: Key, reference: SoftReference[TargetMethod]): Unit = this.synchronized {
+    entries.put(key, reference)
+    evict()
+  }
+
+  private def evict(): Unit = {
+    val iterator = entries.entrySet().iterator()
+    while (entries.size() > maxEntries && iterator.hasNext) {
+      iterator.next()
+      iterator.remove()
+      evictions = evictions + 1
+    }
+  }
+}
+
+object TargetMethodCache {
+  private val logger = LogManager.getLogger("brbo.verification.TargetMethodCache")
+
+  val DEFAULT_MAX_ENTRIES = 64
+
+  private case class Key(className: String, sourceCode: String)
+}
@@ -13,9 +13,11 @@ import com.sun.source.tree._
 
 import scala.collection.JavaConverters._
 import scala.collection.immutable.HashSet
+import scala.collection.mutable
 
 class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments, testMode: Boolean)
   extends DecompositionInterface(inputMethod, arguments, testMode) {
+  private val treeIndex = inputMethod.statementTreeIndex
 
   override def decompose: List[DecompositionResult] = decompose(fullAmortize, selectiveAmortize, noAmortize)
 
@@ -44,9 +46,11 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
   def selectiveAmortize: IntermediateResult[Subprogram] = {
     logger.info(s"Decompose mode: `${brbo.verification.AmortizationMode.SELECTIVE_AMORTIZE}`")
     var subprograms = eliminateEnvironmentInterference(mergeIfOverlap(initializeSubprograms()))
+    // Whether two subprograms interfere only depends on the two subprograms, which are unchanged unless merged or enlarged
+    val nonInterfering = new mutable.HashSet[(Subprogram, Subprogram)]
     var continue = true
     while (continue) {
-      val interferedSubprograms = findInterference(subprograms)
+      val interferedSubprograms = findInterference(subprograms, nonInterfering)
       if (interferedSubprograms.isEmpty) {
         continue = false
       }
@@ -105,8 +109,7 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
             val statements = blockTree.getStatements.asScala.toList
             val statements2 = statements.filter({
               statement =>
-                val trees = TreeUtils.collectStatementTrees(statement)
-                trees.intersect(subprogram1.innerTrees).nonEmpty || trees.intersect(subprogram2.innerTrees).nonEmpty
+                treeIndex.overlap(List(statement), subprogram1.astNodes) || treeIndex.overlap(List(statement), subprogram2.astNodes)
             })
             val startIndex = statements.indexOf(statements2.head)
             val endIndex = statements.indexOf(statements2.last)
@@ -146,13 +149,12 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
    */
   def enlarge(subprogram: Subprogram): Subprogram = {
     def avoidDanglingBreakContinue(newStatement: StatementTree, minimalEnclosingBlock: Tree): Option[Tree] = {
-      val trees = TreeUtils.collectStatementTrees(newStatement)
       val containsBreakContinue = {
         TreeUtils.collectCommands(newStatement).exists({
           case tree@(_: BreakTree | _: ContinueTree) =>
-            TreeUtils.getMinimalEnclosingLoop(inputMethod.getPath(tree)) match {
+            inputMethod.loopForest.minimalEnclosingLoop(tree) match {
               case Some(enclosingLoop) =>
-                !TreeUtils.collectStatementTrees(enclosingLoop.asInstanceOf[StatementTree]).subsetOf(trees)
+                !treeIndex.encloses(newStatement, enclosingLoop)
               case None => true
             }
           case _ => false
@@ -160,7 +162,7 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
       }
       traceDebugMode(s"Enlarge - Contain dangling `break` or `continue`? $containsBreakContinue")
       if (containsBreakContinue) {
-        val minimalLoop = TreeUtils.getMinimalEnclosingLoop(inputMethod.getPath(minimalEnclosingBlock))
+        val minimalLoop = inputMethod.loopForest.minimalEnclosingLoop(minimalEnclosingBlock)
         assert(minimalLoop.isDefined)
         minimalLoop
       }
@@ -217,30 +219,29 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
   }
 
   def mergeIfOverlap(subprograms: Set[Subprogram]): Subprograms = {
-    var newSubprograms: Set[Subprogram] = subprograms
-    var continue = true
-    while (continue) {
-      MathUtils.crossJoin2(newSubprograms, newSubprograms)
-        .filter(pair => pair._1 != pair._2)
-        .find({ pair => Decomposition.overlap(pair._1, pair._2) })
-      match {
-        case Some(pair) =>
-          val newSubprogram = merge(pair._1, pair._2)
+    val newSubprograms = UnionFind.mergeUntilFixpoint[Subprogram](
+      sortSubprograms(subprograms),
+      (subprogram1, subprogram2) => Decomposition.overlap(subprogram1, subprogram2),
+      {
+        (subprogram1, subprogram2) =>
+          val newSubprogram = merge(subprogram1, subprogram2)
           logger.info(s"Merge two subprograms because they overlap with each other")
-          traceDebugMode(s"Merge if overlap - Subprogram 1: ${pair._1}\nSubprogram 2: ${pair._2}\nNew subprogram: $newSubprogram")
-          newSubprograms = newSubprograms - pair._1 - pair._2 + newSubprogram
-        case None => continue = false
-      }
-    }
-    Subprograms(newSubprograms)
+          traceDebugMode(s"Merge if overlap - Subprogram 1: $subprogram1\nSubprogram 2: $subprogram2\nNew subprogram: $newSubprogram")
+          newSubprogram
+      })
+    Subprograms(newSubprograms.toSet)
+  }
+
+  private def sortSubprograms(subprograms: Iterable[Subprogram]): List[Subprogram] = {
+    subprograms.toList.sortBy(subprogram => (treeIndex.id(subprogram.astNodes.head), -treeIndex.id(subprogram.astNodes.last)))
   }
 
   def environmentModifiedSet(subprogram: Subprogram, subprograms: Subprograms): Set[String] = {
     // Environment interferes only if there exists a path from the subprgram to the environment
-    TreeUtils.getMaximalEnclosingLoop(inputMethod.getPath(subprogram.astNodes.head)) match {
+    inputMethod.loopForest.maximalEnclosingLoop(subprogram.astNodes.head) match {
       case Some(maximalLoop) =>
         traceDebugMode(s"Maximal enclosing loop: $maximalLoop")
-        val environmentCommands = TreeUtils.collectCommands(maximalLoop.asInstanceOf[StatementTree]).filter({
+        val environmentCommands = TreeUtils.collectCommands(maximalLoop).filter({
           command =>
             !subprograms.programs.exists({ subprogram => subprogram.commands.contains(command) })
         })
@@ -262,19 +263,29 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
     val taintSet = DependencyAnalysis.controlDataDependencyForResources(subprogram.targetMethod, debugMode)
     traceDebugMode(s"Taint set `$taintSet` of subprogram\n$subprogram")
 
-    modifiedSet.intersect(taintSet.inputs).nonEmpty
+    taintSet.inputsIntersect(modifiedSet)
   }
 
   def findInterference(subprograms: Subprograms): Option[(Subprogram, Subprogram)] = {
-    // subprograms.head, subprograms.tail.head
-    MathUtils.crossJoin(List(subprograms.programs, subprograms.programs)).find({
-      subprograms2 =>
-        if (interfere(subprograms2.head, subprograms2.tail.head)) true
-        else false
-    }) match {
-      case Some(subprograms3) => Some(subprograms3.head, subprograms3.tail.head)
-      case None => None
-    }
+    findInterference(subprograms, new mutable.HashSet[(Subprogram, Subprogram)])
+  }
+
+  /**
+   *
+   * @param nonInterfering Pairs of subprograms that are known to not interfere, which is updated with newly examined pairs
+   * @return A pair of subprograms where the first may interfere with the second
+   */
+  private def findInterference(subprograms: Subprograms, nonInterfering: mutable.Set[(Subprogram, Subprogram)]): Option[(Subprogram, Subprogram)] = {
+    val sorted = sortSubprograms(subprograms.programs)
+    sorted.iterator.flatMap(subprogram1 => sorted.iterator.map(subprogram2 => (subprogram1, subprogram2))).find({
+      pair =>
+        if (nonInterfering.contains(pair)) false
+        else if (interfere(pair._1, pair._2)) true
+        else {
+          nonInterfering.add(pair)
+          false
+        }
+    })
   }
 
   def getAllCommonEnclosingTrees(subprogram1: Subprogram, subprogram2: Subprogram): List[StatementTree] = {
@@ -286,8 +297,8 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
       assert(leaf != null)
       leaf match {
         case statementTree: StatementTree =>
-          val allTrees = TreeUtils.collectStatementTrees(statementTree)
-          if (subprogram1.innerTrees.subsetOf(allTrees) && subprogram2.innerTrees.subsetOf(allTrees)) {
+          val enclosesAll = (subprogram1.astNodes ++ subprogram2.astNodes).forall(astNode => treeIndex.encloses(statementTree, astNode))
+          if (enclosesAll) {
             allCommonEnclosingTrees = statementTree :: allCommonEnclosingTrees
           }
         case _ => continue = false
@@ -306,18 +317,18 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
       commonTrees.find(tree => tree.isInstanceOf[BlockTree]) match {
         case Some(blockTree) =>
           val statements = blockTree.asInstanceOf[BlockTree].getStatements.asScala
-          val trees = statements.map(statement => TreeUtils.collectStatementTrees(statement)).toList.zipWithIndex
+          val trees = statements.toList.zipWithIndex
           val index1 = {
             var list = List[Int]()
             trees.foreach({
-              case (tree, index) => if (subprogram1.innerTrees.intersect(tree).nonEmpty) list = index :: list
+              case (tree, index) => if (treeIndex.overlap(subprogram1.astNodes, List(tree))) list = index :: list
             })
             list.head
           }
           val index2 = {
             var list = List[Int]()
             trees.foreach({
-              case (tree, index) => if (subprogram2.innerTrees.intersect(tree).nonEmpty) list = index :: list
+              case (tree, index) => if (treeIndex.overlap(subprogram2.astNodes, List(tree))) list = index :: list
             })
             list.last
           }
@@ -350,21 +361,21 @@ class Decomposition(inputMethod: TargetMethod, arguments: CommandLineArguments,
     traceDebugMode(s"Subprogram 1:\n$subprogram1")
     traceDebugMode(s"Subprogram 2 taint set: $taintSet2")
     traceDebugMode(s"Subprogram 2:\n$subprogram2")
-    modifiedSet1.intersect(taintSet2.inputs).nonEmpty
+    taintSet2.inputsIntersect(modifiedSet1)
   }
 }
 
 object Decomposition {
   def overlap(subprogram1: Subprogram, subprogram2: Subprogram): Boolean = {
-    subprogram1.innerTrees.intersect(subprogram2.innerTrees).nonEmpty
+    assert(subprogram1.inputMethod eq subprogram2.inputMethod)
+    subprogram1.inputMethod.statementTreeIndex.overlap(subprogram1.astNodes, subprogram2.astNodes)
   }
 
   def ensureNoOverlap(programs: Set[Subprogram]): Unit = {
-    MathUtils.crossJoin(List(programs, programs)).foreach({
-      programs2 =>
-        val program1 = programs2.head
-        val program2 = programs2.tail.head
-        if (program1 != program2) assert(!overlap(program1, program2), s"Overlapping subprograms:\n$program1\n$program2")
+    val list = programs.toList
+    list.tails.foreach({
+      case program1 :: rest => rest.foreach(program2 => assert(!overlap(program1, program2), s"Overlapping subprograms:\n$program1\n$program2"))
+      case Nil =>
     })
   }
 }
@@ -377,7 +388,7 @@ case class Subprogram(inputMethod: TargetMethod, astNodes: List[StatementTree])
     s"Subprogram(\n$nodes\n)"
   }
 
-  val innerTrees: Set[StatementTree] = astNodes.flatMap({ astNode => TreeUtils.collectStatementTrees(astNode) }).toSet
+  lazy val innerTrees: Set[StatementTree] = astNodes.flatMap({ astNode => TreeUtils.collectStatementTrees(astNode) }).toSet
   val commands: Set[StatementTree] = TreeUtils.collectCommands(astNodes)
 
   val minimalEnclosingTree: StatementTree = {
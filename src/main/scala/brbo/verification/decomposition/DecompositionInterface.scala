@@ -72,13 +72,13 @@ abstract class DecompositionInterface(inputMethod: TargetMethod, arguments: Comm
                 assert(literalTree.getKind == Kind.INT_LITERAL)
                 // The initial subprogram is the minimal enclosing loop when `R` is updated by a constant
                 val subprogram: StatementTree = {
-                  TreeUtils.getMinimalEnclosingLoop(targetMethod.getPath(statement)) match {
+                  targetMethod.loopForest.minimalEnclosingLoop(statement) match {
                     case Some(enclosingLoop) => enclosingLoop
                     case None =>
                       logger.trace(s"Resource update `$statement` does not have an enclosing loop")
                       statement
                   }
-                }.asInstanceOf[StatementTree]
+                }
                 val entryNode: Node = CFGUtils.entryOfMinimalEnclosingLoop(updateNode, targetMethod) match {
                   case Some(entryNode) => entryNode
                   case None => updateNode
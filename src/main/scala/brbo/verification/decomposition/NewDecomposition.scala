@@ -6,13 +6,16 @@ import brbo.common.instrument.ChangeEntryNode
 import brbo.verification.AmortizationMode.{FULL_AMORTIZE, NO_AMORTIZE, SELECTIVE_AMORTIZE}
 import brbo.verification.dependency.{DependencyAnalysis, Dominator}
 import com.sun.source.tree.StatementTree
+import org.apache.logging.log4j.ThreadContext
 import org.checkerframework.dataflow.cfg.node.Node
 
+import java.util.concurrent.Executors
 import scala.collection.immutable.HashSet
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, ExecutionContext, Future}
 
 class NewDecomposition(inputMethod: TargetMethod, arguments: CommandLineArguments, testMode: Boolean) extends DecompositionInterface(inputMethod, arguments, testMode) {
-  private val reachingDefinition = inputMethod.reachingDefinitions
-  private val controlDependency = inputMethod.controlDependency
+  private val dependencyGraph = inputMethod.dependencyGraph
   private val dominator = new Dominator(inputMethod)
 
   // override protected val debug: Boolean = false
@@ -22,13 +25,13 @@ class NewDecomposition(inputMethod: TargetMethod, arguments: CommandLineArgument
   def selectiveAmortize: IntermediateResult[Group] = {
     val groups = initializeGroups()
     val newGroups = mergeGroups(groups)
-    val finalGroups = Groups(newGroups.elements.map(group => decideReset(group)))
+    val finalGroups = Groups(decideResets(sortGroups(newGroups.elements)).toSet)
     IntermediateResult(finalGroups, SELECTIVE_AMORTIZE)
   }
 
   def noAmortize: IntermediateResult[Group] = {
     val groups = initializeGroups()
-    val newGroups = groups.elements.map(group => Group(Some(group.updates.head.statement), group.updates))
+    val newGroups = groups.elements.map(group => group.withResetLocation(group.updates.head.statement))
     IntermediateResult(Groups(newGroups), NO_AMORTIZE)
   }
 
@@ -55,21 +58,23 @@ class NewDecomposition(inputMethod: TargetMethod, arguments: CommandLineArgument
   }
 
   def mergeGroups(groups: Groups[Group]): Groups[Group] = {
-    var newGroups: Set[Group] = groups.elements
-    var continue = true
-    while (continue) {
-      MathUtils.crossJoin2(newGroups, newGroups)
-        .filter(pair => pair._1 != pair._2)
-        .find({ pair => shouldMerge(pair._1, pair._2) }) match {
-        case Some(pair) =>
-          val newGroup = Group(None, pair._1.updates ++ pair._2.updates)
+    val newGroups = UnionFind.mergeUntilFixpoint[Group](
+      sortGroups(groups.elements),
+      (group1, group2) => shouldMerge(group1, group2),
+      {
+        (group1, group2) =>
+          val newGroup = group1.merge(group2)
           infoTestMode(s"Merge two groups")
-          traceDebugMode(s"Group 1: ${pair._1}\nGroup 2: ${pair._2}\nNew group: $newGroup")
-          newGroups = newGroups - pair._1 - pair._2 + newGroup
-        case None => continue = false
-      }
-    }
-    Groups(newGroups)
+          traceDebugMode(s"Group 1: $group1\nGroup 2: $group2\nNew group: $newGroup")
+          newGroup
+      })
+    Groups(newGroups.toSet)
+  }
+
+  // Sort groups by the source positions of their first updates
+  private def sortGroups(groups: Iterable[Group]): List[Group] = {
+    val treeIndex = inputMethod.statementTreeIndex
+    groups.toList.sortBy(group => group.updates.map(u => treeIndex.id(u.statement)).min)
   }
 
   def shouldMerge(group1: Group, group2: Group): Boolean = {
@@ -79,92 +84,138 @@ class NewDecomposition(inputMethod: TargetMethod, arguments: CommandLineArgument
     traceDebugMode(s"Group 1 taint set: $taintSet1")
     traceDebugMode(s"Group 2: $group2")
     traceDebugMode(s"Group 2 taint set: $taintSet2")
-    taintSet1.allVariables.intersect(taintSet2.allVariables).nonEmpty
+    taintSet1.intersects(taintSet2)
   }
 
+  /**
+   *
+   * @return Groups with reset locations, in the order of the input groups
+   */
+  def decideResets(groups: List[Group]): List[Group] = {
+    val jobs = Math.min(arguments.getDecomposeJobs, groups.size)
+    if (jobs <= 1) groups.map(group => decideReset(group))
+    else {
+      // Groups are independent of each other once merged. Results are collected in the order of the input groups
+      val executorService = Executors.newFixedThreadPool(jobs)
+      implicit val executionContext: ExecutionContext = ExecutionContext.fromExecutorService(executorService)
+      val logContext = ThreadContext.getImmutableContext
+      try {
+        val futures = groups.map({
+          group =>
+            Future {
+              ThreadContext.putAll(logContext)
+              try decideReset(group)
+              finally ThreadContext.clearMap()
+            }
+        })
+        Await.result(Future.sequence(futures), Duration.Inf)
+      }
+      finally {
+        executorService.shutdown()
+      }
+    }
+  }
+
+  /**
+   * Commands whose nodes all dominate all updates in the group, from the lowest to the highest in the dominator tree. The
+   * lowest candidate that satisfies the taint check is the reset location, such that new programs are constructed (by
+   * changing entry nodes) only until the first candidate that satisfies the check
+   */
   def decideReset(group: Group): Group = {
     infoTestMode(s"Decide reset for: ${group.updates.map(u => s"${u.statement} (${u.statement.hashCode()})")}")
     val updateNodes = group.updates.map(u => UniqueNode(u.node)) // Two Nodes can be .equals but represent different CFG nodes
 
-    val allResets = inputMethod.commandsNodesMap.filter({
-      case (candidateReset, resetNodes) =>
-        // For each command in the input program that dominates all update commands in the group, construct a new program
-        if (resetNodes.isEmpty) {
-          false
-        }
-        else {
-          traceDebugMode(s"Try reset `$candidateReset`")
-          val dominate = MathUtils.crossJoin2(resetNodes, updateNodes).forall({
-            case (resetNode, updateNode) =>
-              val result = dominator.isDominatedBy(updateNode, resetNode)
-              val not = if (!result) "not" else "indeed"
-              traceDebugMode(s"${CFGUtils.nodeUniqueIdentifier(updateNode.node)} is $not dominated by ${CFGUtils.nodeUniqueIdentifier(resetNode.node)}")
-              result
-          })
-
-          if (!dominate) {
-            false
-          }
-          else {
-            val newMethod = ChangeEntryNode.changeEntryNode(inputMethod, candidateReset, group.updates.map(u => u.statement).toSet, testMode)
-            traceDebugMode(s"New program:\n${newMethod.methodTree}")
-            val taintSet = {
-              val taintSet = DependencyAnalysis.controlDataDependencyForResources(newMethod, debug = false)
-              TaintSet.removeResourceVariables(taintSet)
-            }
-            traceDebugMode(s"Command: `$candidateReset`. Taint set: $taintSet.")
-            taintSet.inputs.forall(identifier => inputMethod.inputVariables.contains(identifier))
-
-            /*infoTestMode(s"Command `$candidateReset` dominates all updates")
-            true*/
-          }
-        }
-    }).toList.sortWith({ // This sort is stable
-      case (pair1, pair2) =>
-        val sortedNodes1 = UniqueNode.sortNodes(pair1._2)
-        val sortedNodes2 = UniqueNode.sortNodes(pair2._2)
-        s"${pair1._1}: $sortedNodes1" < s"${pair2._2}: $sortedNodes2"
-    }).sortWith({
-      case (pair1, pair2) =>
-        val resetNodes1 = pair1._2
-        val resetNodes2 = pair2._2
-        resetNodes1.forall({
-          resetNode1 =>
-            resetNodes2.forall(resetNode2 => dominator.isDominatedBy(resetNode1, resetNode2))
+    val candidateResets: List[StatementTree] = {
+      inputMethod.indexedCFG.commonDominators(updateNodes.map(u => u.node))
+        .flatMap(node => nodeCommands.getOrElse(UniqueNode(node), Nil))
+        .distinct
+        .filter({
+          candidateReset =>
+            traceDebugMode(s"Try reset `$candidateReset`")
+            inputMethod.commandsNodesMap(candidateReset).forall({
+              resetNode =>
+                updateNodes.forall({
+                  updateNode =>
+                    val result = dominator.isDominatedBy(updateNode, resetNode)
+                    val not = if (!result) "not" else "indeed"
+                    traceDebugMode(s"${CFGUtils.nodeUniqueIdentifier(updateNode.node)} is $not dominated by ${CFGUtils.nodeUniqueIdentifier(resetNode.node)}")
+                    result
+                })
+            })
         })
-    })
+    }
 
     val resetCommand: StatementTree = {
-      if (allResets.isEmpty) throw new Exception("Unexpected")
-      else allResets.head._1
+      candidateResets.find(candidateReset => isValidReset(candidateReset, group)) match {
+        case Some(resetCommand) => resetCommand
+        case None => throw new Exception("Unexpected")
+      }
     }
 
-    infoTestMode(s"Candidate resets: ${allResets.map(pair => pair._1)}")
+    infoTestMode(s"Candidate resets: $candidateResets")
     infoTestMode(s"Decide reset at `$resetCommand (${resetCommand.hashCode()})` for: ${group.updates.map(u => s"${u.statement} (${u.statement.hashCode()})")}")
-    Group(Some(resetCommand), group.updates)
+    group.withResetLocation(resetCommand)
   }
 
-  case class Update(statement: StatementTree, node: Node)
+  /**
+   *
+   * @return If resetting at the command only leaves inputs in the taint set of the updates in the group
+   */
+  private def isValidReset(candidateReset: StatementTree, group: Group): Boolean = {
+    val newMethod = ChangeEntryNode.changeEntryNode(inputMethod, candidateReset, group.updates.map(u => u.statement).toSet, testMode)
+    traceDebugMode(s"New program:\n${newMethod.methodTree}")
+    val taintSet = {
+      val taintSet = DependencyAnalysis.controlDataDependencyForResources(newMethod, debug = false)
+      TaintSet.removeResourceVariables(taintSet)
+    }
+    traceDebugMode(s"Command: `$candidateReset`. Taint set: $taintSet.")
+    taintSet.inputs.forall(identifier => inputMethod.inputVariables.contains(identifier))
+  }
 
-  case class Group(resetLocation: Option[StatementTree], updates: List[Update]) extends Segment {
-    val taintSets: TaintSet = {
-      val taintSets = updates.map({
-        update =>
-          val taintSet = DependencyAnalysis.taintSetPerExecution(update.node, reachingDefinition, controlDependency, debug = false)
-          TaintSet.removeResourceVariables(taintSet)
-      })
-      TaintSet.merge(taintSets)
+  // A mapping from nodes to the commands that they correspond to
+  private lazy val nodeCommands: Map[UniqueNode, List[StatementTree]] = {
+    sortedCommands.foldLeft(Map[UniqueNode, List[StatementTree]]())({
+      (acc, command) =>
+        inputMethod.commandsNodesMap(command).foldLeft(acc)({
+          (acc2, node) => acc2 + (node -> (command :: acc2.getOrElse(node, Nil)))
+        })
+    })
+  }
+
+  case class Update(statement: StatementTree, node: Node) {
+    // Computed at most once for every update, no matter how many groups the update is merged into
+    lazy val taintSet: TaintSet = {
+      val taintSet = DependencyAnalysis.taintSetPerExecution(node, dependencyGraph, debug = false)
+      TaintSet.removeResourceVariables(taintSet)
     }
-    val taintSetsDataOnlyExcludeInputs: TaintSet = {
-      val taintSets = updates.map({
-        update =>
-          val taintSet = DependencyAnalysis.transitiveDataDependency(update.node, reachingDefinition, Set(), excludeResourceVariables = true, debug = false)
-          val excludeInputs = TaintSet(taintSet.allVariables.diff(inputMethod.inputVariables.keySet), taintSet.inputs.diff(inputMethod.inputVariables.keySet))
-          traceDebugMode(s"Command `${update.statement}` -> Taint sets (data only): ${taintSet.toTestString}. Exclude inputs: ${excludeInputs.toTestString}")
-          TaintSet.removeResourceVariables(excludeInputs)
-      })
-      TaintSet.merge(taintSets)
+    lazy val taintSetDataOnlyExcludeInputs: TaintSet = {
+      val taintSet = DependencyAnalysis.transitiveDataDependency(node, dependencyGraph, excludeResourceVariables = true, debug = false)
+      val excludeInputs = taintSet -- inputMethod.inputVariables.keySet
+      traceDebugMode(s"Command `$statement` -> Taint sets (data only): ${taintSet.toTestString}. Exclude inputs: ${excludeInputs.toTestString}")
+      TaintSet.removeResourceVariables(excludeInputs)
     }
+  }
+
+  case class Group(resetLocation: Option[StatementTree], updates: List[Update]) extends Segment {
+    protected lazy val allTaintSets: (TaintSet, TaintSet) =
+      (TaintSet.merge(updates.map(u => u.taintSet)), TaintSet.merge(updates.map(u => u.taintSetDataOnlyExcludeInputs)))
+
+    def taintSets: TaintSet = allTaintSets._1
+
+    def taintSetsDataOnlyExcludeInputs: TaintSet = allTaintSets._2
+
+    /**
+     *
+     * @return A group with the updates of both groups (in the order of their source positions), whose taint sets are the
+     *         unions of the taint sets of both groups
+     */
+    def merge(other: Group): Group = {
+      val treeIndex = inputMethod.statementTreeIndex
+      Group.withTaintSets(None, (updates ++ other.updates).sortBy(u => treeIndex.id(u.statement)),
+        (taintSets ++ other.taintSets, taintSetsDataOnlyExcludeInputs ++ other.taintSetsDataOnlyExcludeInputs))
+    }
+
+    def withResetLocation(statement: StatementTree): Group = Group.withTaintSets(Some(statement), updates, allTaintSets)
 
     resetLocation match {
       case Some(statement) => assert(TreeUtils.isCommand(statement))
@@ -182,4 +233,17 @@ class NewDecomposition(inputMethod: TargetMethod, arguments: CommandLineArgument
 
     override def containCommand(tree: StatementTree): Boolean = updates.exists(u => u.statement == tree)
   }
+
+  object Group {
+    /**
+     *
+     * @param knownTaintSets The taint sets of the group, when they are known from the groups that the group is
+     *                       constructed from. Evaluated at most once, when the taint sets are first used
+     */
+    def withTaintSets(resetLocation: Option[StatementTree], updates: List[Update], knownTaintSets: => (TaintSet, TaintSet)): Group = {
+      new Group(resetLocation, updates) {
+        override protected lazy val allTaintSets: (TaintSet, TaintSet) = knownTaintSets
+      }
+    }
+  }
 }
@@ -1,26 +1,122 @@
 package brbo.verification.decomposition
 
-import brbo.common.GhostVariableUtils
-import brbo.common.GhostVariableUtils.GhostVariable.Resource
+import brbo.common.SymbolTable
+
+import java.util
 
 /**
+ * Sets of variables are bit sets over a symbol table. Operations between taint sets over the same symbol table are
+ * bit set operations, and operations between taint sets over different symbol tables re-intern variable names
  *
- * @param allVariables Local and input variables that taint resource updates
- * @param inputs       Input variables that taint resource updates
+ * @param symbolTable The symbol table that interns the variables
+ * @param allBits     Local and input variables that taint resource updates. Never mutated
+ * @param inputBits   Input variables that taint resource updates. Never mutated
  */
-case class TaintSet(allVariables: Set[String], inputs: Set[String]) {
+class TaintSet private(val symbolTable: SymbolTable, private val allBits: util.BitSet, private val inputBits: util.BitSet) {
+  // Local and input variables that taint resource updates
+  lazy val allVariables: Set[String] = symbolTable.names(allBits)
+  // Input variables that taint resource updates
+  lazy val inputs: Set[String] = symbolTable.names(inputBits)
+
   def toTestString: String = s"All: ${allVariables.toList.sorted}. Inputs: ${inputs.toList.sorted}"
+
+  def ++(other: TaintSet): TaintSet = {
+    val (otherAllBits, otherInputBits) = other.bitsIn(symbolTable)
+    TaintSet(symbolTable, TaintSet.or(allBits, otherAllBits), TaintSet.or(inputBits, otherInputBits))
+  }
+
+  /**
+   *
+   * @return Taint sets without the variables
+   */
+  def --(variables: Iterable[String]): TaintSet = {
+    val removed = new util.BitSet
+    variables.foreach(variable => symbolTable.lookup(variable).foreach(index => removed.set(index)))
+    TaintSet(symbolTable, TaintSet.andNot(allBits, removed), TaintSet.andNot(inputBits, removed))
+  }
+
+  /**
+   *
+   * @return If the two taint sets share any variable
+   */
+  def intersects(other: TaintSet): Boolean = {
+    val (otherAllBits, _) = other.bitsIn(symbolTable)
+    allBits.intersects(otherAllBits)
+  }
+
+  /**
+   *
+   * @return If any input that taints resource updates is in the variables
+   */
+  def inputsIntersect(variables: Iterable[String]): Boolean = {
+    variables.exists(variable => symbolTable.lookup(variable).exists(index => inputBits.get(index)))
+  }
+
+  private def bitsIn(table: SymbolTable): (util.BitSet, util.BitSet) = {
+    if (table eq symbolTable) (allBits, inputBits)
+    else (table.intern(allVariables), table.intern(inputs))
+  }
+
+  override def equals(obj: Any): Boolean = {
+    obj match {
+      case other: TaintSet =>
+        if (other.symbolTable eq symbolTable) allBits == other.allBits && inputBits == other.inputBits
+        else allVariables == other.allVariables && inputs == other.inputs
+      case _ => false
+    }
+  }
+
+  override def hashCode(): Int = (allVariables, inputs).hashCode()
+
+  override def toString: String = s"TaintSet($allVariables,$inputs)"
 }
 
 object TaintSet {
+  def apply(allVariables: Set[String], inputs: Set[String]): TaintSet = apply(SymbolTable.shared, allVariables, inputs)
+
+  def apply(symbolTable: SymbolTable, allVariables: Set[String], inputs: Set[String]): TaintSet = {
+    new TaintSet(symbolTable, symbolTable.intern(allVariables), symbolTable.intern(inputs))
+  }
+
+  /**
+   *
+   * @param allBits   Not mutated afterwards
+   * @param inputBits Not mutated afterwards
+   */
+  def apply(symbolTable: SymbolTable, allBits: util.BitSet, inputBits: util.BitSet): TaintSet = {
+    new TaintSet(symbolTable, allBits, inputBits)
+  }
+
   def merge(taintSets: Iterable[TaintSet]): TaintSet = {
-    TaintSet(taintSets.flatMap(set => set.allVariables).toSet, taintSets.flatMap(set => set.inputs).toSet)
+    if (taintSets.isEmpty) TaintSet(Set[String](), Set[String]())
+    else {
+      val symbolTable = taintSets.head.symbolTable
+      val allBits = new util.BitSet
+      val inputBits = new util.BitSet
+      taintSets.foreach({
+        taintSet =>
+          val (otherAllBits, otherInputBits) = taintSet.bitsIn(symbolTable)
+          allBits.or(otherAllBits)
+          inputBits.or(otherInputBits)
+      })
+      TaintSet(symbolTable, allBits, inputBits)
+    }
   }
 
   def removeResourceVariables(taintSet: TaintSet): TaintSet = {
-    TaintSet(
-      taintSet.allVariables.filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource)),
-      taintSet.inputs.filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource))
-    )
+    val resourceVariables = taintSet.symbolTable.resourceVariableMask
+    TaintSet(taintSet.symbolTable, andNot(taintSet.allBits, resourceVariables), andNot(taintSet.inputBits, resourceVariables))
+  }
+
+  private def or(bits1: util.BitSet, bits2: util.BitSet): util.BitSet = {
+    val result = bits1.clone().asInstanceOf[util.BitSet]
+    result.or(bits2)
+    result
   }
-}
\ No newline at end of file
+
+  private def andNot(bits1: util.BitSet, bits2: util.BitSet): util.BitSet = {
+    val result = bits1.clone().asInstanceOf[util.BitSet]
+    result.andNot(bits2)
+    result
+  }
+}
@@ -1,9 +1,7 @@
 package brbo.verification.dependency
 
 import brbo.common.TargetMethod
-import brbo.common.cfg.CFGUtils
 import com.ibm.wala.util.graph.NumberedGraph
-import com.ibm.wala.util.graph.dominators.DominanceFrontiers
 import org.apache.logging.log4j.LogManager
 import org.checkerframework.dataflow.cfg.block.Block
 
@@ -22,8 +20,8 @@ object ControlDependency {
    * @return A mapping from each block to the blocks that are dependent on it
    */
   def computeControlDependency(targetMethod: TargetMethod): Map[Block, Set[Block]] = {
-    val (graph: NumberedGraph[BrboNode], root) = CFGUtils.deepCopyGraph(targetMethod.cfg, transpose = true)
-    val dominanceFrontiers = new DominanceFrontiers(graph, root)
+    val graph: NumberedGraph[BrboNode] = targetMethod.indexedCFG.transposedGraph
+    val dominanceFrontiers = targetMethod.indexedCFG.postDominanceFrontiers
 
     var map = targetMethod.cfg.getAllBlocks.asScala.foldLeft(new HashMap[Block, Set[Block]])({
       (acc, block) => acc + (block -> new HashSet[Block])
@@ -1,16 +1,16 @@
 package brbo.verification.dependency
 
 import brbo.common.GhostVariableUtils.GhostVariable.Resource
-import brbo.common.cfg.{CFGUtils, UniqueNode}
+import brbo.common.cfg.CFGUtils
 import brbo.common.{GhostVariableUtils, TargetMethod}
 import brbo.verification.decomposition.TaintSet
+import brbo.verification.dependency.reachdef.ReachingValue
 import org.apache.logging.log4j.LogManager
 import org.checkerframework.dataflow.cfg.block.Block.BlockType
 import org.checkerframework.dataflow.cfg.block.{Block, ConditionalBlock}
-import org.checkerframework.dataflow.cfg.node.Node
+import org.checkerframework.dataflow.cfg.node.{AssignmentNode, Node}
 
 import scala.collection.JavaConverters._
-import scala.collection.immutable.HashSet
 
 object DependencyAnalysis {
   private val logger = LogManager.getLogger("brbo.verification.decomposition.DecompositionUtils")
@@ -27,7 +27,7 @@ object DependencyAnalysis {
    * @param debug Print debug information
    * @return The condition node that the block is control-dependent on
    */
-  private def getCondition(node: Node, block: Block, debug: Boolean): Option[Node] = {
+  private[dependency] def getCondition(node: Node, block: Block, debug: Boolean): Option[Node] = {
     def blocksToString(blocks: Iterable[Block]): String = {
       val body = blocks.map(block => s"${block.getUid}: $block").mkString("\n")
       s"====\n$body\n===="
@@ -64,119 +64,60 @@ object DependencyAnalysis {
   }
 
   def controlDataDependencyForResources(targetMethod: TargetMethod, debug: Boolean): TaintSet = {
-    val reachingDefinitions = targetMethod.reachingDefinitions
-    val controlDependency = targetMethod.controlDependency
+    val dependencyGraph = targetMethod.dependencyGraph
     val taintSets = targetMethod.cfg.getAllNodes.asScala
       .filter({ node => GhostVariableUtils.extractUpdate(node, Resource).isDefined })
       .map({ node =>
         traceOrError(s"Compute taint set for $node", debug)
-        controlDataDependencyForNode(node, inputNodeIsExpression = false, reachingDefinitions, controlDependency, Set(), debug)
+        dependencyGraph.controlDataDependency(node, isExpression = false, debug)
       })
       .toSet
     TaintSet.merge(taintSets)
   }
 
+  /**
+   *
+   * @param variable A variable
+   * @return Input variables that taint the values assigned to the variable, via data or control dependencies
+   */
+  def inputsTaintingVariable(targetMethod: TargetMethod, variable: String, debug: Boolean): Set[String] = {
+    val dependencyGraph = targetMethod.dependencyGraph
+    val taintSets = targetMethod.cfg.getAllNodes.asScala
+      .filter({
+        case assignmentNode: AssignmentNode => assignmentNode.getTarget.toString == variable
+        case _ => false
+      })
+      .map({ node =>
+        traceOrError(s"Compute taint set for $node", debug)
+        dependencyGraph.controlDataDependency(node, isExpression = false, debug)
+      })
+      .toSet
+    TaintSet.merge(taintSets).inputs
+  }
+
   def transitiveDataDependency(inputNode: Node,
-                               reachingDefinitions: ReachingDefinition,
-                               visited: Set[UniqueNode],
+                               dependencyGraph: DependencyGraph,
                                excludeResourceVariables: Boolean,
                                debug: Boolean): TaintSet = {
-    if (visited.contains(UniqueNode(inputNode))) return TaintSet(new HashSet[String], new HashSet[String])
-
-    val usedVariables: Set[String] = {
-      val usedVariables = CFGUtils.getUsedVariables(inputNode, isExpression = false)
-      traceOrError(s"Used variables: $usedVariables", debug)
-      if (excludeResourceVariables)
-        usedVariables.filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource))
-      else
-        usedVariables
-    }
-
-    val set = reachingDefinitions.get(inputNode) match {
-      case Some(definitions) =>
-        val newDefinitions = definitions.filter(definition => usedVariables.contains(definition.variable))
-        traceOrError(s"Reaching definitions: $definitions. Used: $newDefinitions", debug)
-        val taintSets = newDefinitions.map({
-          definition =>
-            definition.node match {
-              case Some(UniqueNode(node)) => transitiveDataDependency(node, reachingDefinitions, visited + UniqueNode(inputNode), excludeResourceVariables, debug)
-              case None => TaintSet(HashSet[String](definition.variable), HashSet[String](definition.variable)) // This definition comes from an input variable
-            }
-        })
-        TaintSet.merge(taintSets)
-      case None => TaintSet(new HashSet[String], new HashSet[String])
-    }
-    TaintSet(usedVariables ++ set.allVariables, set.inputs)
-  }
-
-  private def controlDataDependencyForNode(inputNode: Node,
-                                           inputNodeIsExpression: Boolean,
-                                           reachingDefinitions: ReachingDefinition,
-                                           controlDependency: Map[Block, Set[Block]],
-                                           visited: Set[UniqueNode],
-                                           debug: Boolean): TaintSet = {
-    if (visited.contains(UniqueNode(inputNode))) return TaintSet(new HashSet[String], new HashSet[String])
-    traceOrError(s"Visit node `$inputNode`", debug)
-
-    val usedVariables: Set[String] = CFGUtils.getUsedVariables(inputNode, inputNodeIsExpression)
-    traceOrError(s"Used variables: $usedVariables", debug)
-
-    val set1: TaintSet = reachingDefinitions.get(inputNode) match {
-      case Some(definitions) =>
-        val newDefinitions = definitions.filter(definition => usedVariables.contains(definition.variable))
-        traceOrError(s"Reaching definitions: $definitions. Used: $newDefinitions", debug)
-        val taintSets = newDefinitions.map({
-          definition =>
-            definition.node match {
-              case Some(UniqueNode(node)) =>
-                controlDataDependencyForNode(node, inputNodeIsExpression = false,
-                  reachingDefinitions, controlDependency, visited + UniqueNode(inputNode), debug)
-              case None => TaintSet(HashSet[String](definition.variable), HashSet[String](definition.variable)) // This definition comes from an input variable
-            }
-        })
-        TaintSet.merge(taintSets)
-      case None => TaintSet(new HashSet[String], new HashSet[String])
-    }
-
-    val set2: TaintSet = controlDependency.get(inputNode.getBlock) match {
-      case Some(blocks) =>
-        val taintSets = blocks.map({
-          block =>
-            traceOrError(s"Compute taint set for conditional node $inputNode", debug)
-            getCondition(inputNode, block, debug) match {
-              case Some(condition) =>
-                controlDataDependencyForNode(condition, inputNodeIsExpression = true,
-                  reachingDefinitions, controlDependency, visited + UniqueNode(inputNode), debug)
-              case None => TaintSet(new HashSet[String], new HashSet[String])
-            }
-        })
-        TaintSet.merge(taintSets)
-      case None => TaintSet(new HashSet[String], new HashSet[String])
-    }
-
-    TaintSet(usedVariables ++ set1.allVariables ++ set2.allVariables, set1.inputs ++ set2.inputs)
+    dependencyGraph.dataDependency(inputNode, excludeResourceVariables, debug)
   }
 
   def taintSetPerExecution(resourceUpdateNode: Node,
-                           reachingDefinitions: ReachingDefinition,
-                           controlDependency: Map[Block, Set[Block]],
+                           dependencyGraph: DependencyGraph,
                            debug: Boolean): TaintSet = {
     assert(GhostVariableUtils.extractUpdate(resourceUpdateNode, Resource).isDefined)
-    val usedVariables: Set[String] = CFGUtils.getUsedVariables(resourceUpdateNode, isExpression = false).filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource))
-    val set = reachingDefinitions.get(resourceUpdateNode) match {
-      case Some(definitions) =>
-        val newDefinitions = definitions.filter(definition => usedVariables.contains(definition.variable))
-        traceOrError(s"Reaching definitions (that are used): $newDefinitions", debug)
-        val taintSets = newDefinitions.map({
-          definition =>
-            definition.node match {
-              case Some(UniqueNode(node)) => controlDataDependencyForNode(node, inputNodeIsExpression = false, reachingDefinitions, controlDependency, Set(UniqueNode(resourceUpdateNode)), debug)
-              case None => TaintSet(HashSet[String](definition.variable), HashSet[String](definition.variable)) // This definition comes from an input variable
-            }
-        })
-        TaintSet.merge(taintSets)
-      case None => TaintSet(new HashSet[String], new HashSet[String])
-    }
-    TaintSet(usedVariables ++ set.allVariables, set.inputs)
+    dependencyGraph.memoizePerExecution(resourceUpdateNode, {
+      val usedVariables: Set[String] = CFGUtils.getUsedVariables(resourceUpdateNode, isExpression = false).filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource))
+      val definitions = dependencyGraph.reachingDefinitions.get(resourceUpdateNode) match {
+        case Some(definitions) => definitions.filter(definition => usedVariables.contains(definition.variable))
+        case None => Set[ReachingValue]()
+      }
+      traceOrError(s"Reaching definitions (that are used): $definitions", debug)
+      // Definitions without nodes come from input variables. Other definitions are not tainted by the resource update
+      // itself (i.e., in the same execution)
+      val inputs = definitions.filter(definition => definition.node.isEmpty).map(definition => definition.variable)
+      val set = dependencyGraph.controlDataDependencyAvoiding(definitions.flatMap(definition => definition.node).map(uniqueNode => uniqueNode.node), resourceUpdateNode, debug)
+      TaintSet(dependencyGraph.symbolTable, usedVariables ++ inputs, inputs) ++ set
+    })
   }
 }
@@ -0,0 +1,267 @@
+package brbo.verification.dependency
+
+import brbo.common.{GhostVariableUtils, SymbolTable}
+import brbo.common.GhostVariableUtils.GhostVariable.Resource
+import brbo.common.cfg.CFGUtils
+import brbo.verification.decomposition.TaintSet
+import brbo.verification.dependency.DependencyAnalysis.traceOrError
+import brbo.verification.dependency.reachdef.ReachingValue
+import org.checkerframework.dataflow.cfg.block.Block
+import org.checkerframework.dataflow.cfg.node.Node
+
+import java.util
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * The program dependence graph of a method. A vertex is a node, and there is an edge from a node to every definition
+ * that reaches a variable used by the node (data dependency), and to every condition that the node's block is control
+ * dependent on (control dependency).
+ *
+ * Vertices are discovered on demand from the queried nodes. Every strongly connected component records (as bit sets)
+ * the vertices that are reachable from it and the variables that taint it, such that a query is a lookup once the
+ * component of the queried node is known. Thread safe.
+ *
+ * @param reachingDefinitions The reaching definitions of the method
+ * @param controlDependency   A mapping from each block to the blocks that it is control dependent on
+ * @param symbolTable         The symbol table of the method, over which taint sets are computed
+ */
+class DependencyGraph(val reachingDefinitions: ReachingDefinition, controlDependency: Map[Block, Set[Block]], val symbolTable: SymbolTable) {
+  private val controlData = new Closure(includeControlDependency = true, excludeResourceVariables = false)
+  private val dataExcludeResources = new Closure(includeControlDependency = false, excludeResourceVariables = true)
+  private val data = new Closure(includeControlDependency = false, excludeResourceVariables = false)
+
+  private val perExecution = new util.IdentityHashMap[Node, TaintSet]
+
+  /**
+   *
+   * @return Variables that taint the node via data or control dependencies
+   */
+  def controlDataDependency(node: Node, isExpression: Boolean, debug: Boolean): TaintSet = this.synchronized {
+    controlData.taintSet(node, isExpression, debug)
+  }
+
+  /**
+   *
+   * @return Variables that taint any of the nodes via data or control dependencies, without going through node `avoid`
+   */
+  def controlDataDependencyAvoiding(nodes: Iterable[Node], avoid: Node, debug: Boolean): TaintSet = this.synchronized {
+    controlData.taintSetAvoiding(nodes, avoid, debug)
+  }
+
+  /**
+   *
+   * @return Variables that taint the node via data dependencies
+   */
+  def dataDependency(node: Node, excludeResourceVariables: Boolean, debug: Boolean): TaintSet = this.synchronized {
+    val closure = if (excludeResourceVariables) dataExcludeResources else data
+    closure.taintSet(node, isExpression = false, debug)
+  }
+
+  /**
+   *
+   * @return The memoized result of `compute` for the node
+   */
+  def memoizePerExecution(node: Node, compute: => TaintSet): TaintSet = this.synchronized {
+    val existing = perExecution.get(node)
+    if (existing != null) existing
+    else {
+      val result = compute
+      perExecution.put(node, result)
+      result
+    }
+  }
+
+  /**
+   * The transitive closure of one kind of dependency. Components are computed with Tarjan's algorithm, which finishes a
+   * component only after all components reachable from it, such that the closure of a component is the union of its own
+   * vertices and the closures of its successors
+   */
+  private class Closure(includeControlDependency: Boolean, excludeResourceVariables: Boolean) {
+    // Vertices of nodes as statements and as expressions (i.e., conditions)
+    private val statementVertices = new util.IdentityHashMap[Node, Integer]
+    private val expressionVertices = new util.IdentityHashMap[Node, Integer]
+    private val vertexNodes = new ArrayBuffer[Node]
+    private val vertexIsExpression = new ArrayBuffer[Boolean]
+
+    // Computed when a vertex is expanded
+    private val successors = new ArrayBuffer[Array[Int]]
+    private val ownVariables = new ArrayBuffer[util.BitSet]
+    private val ownInputs = new ArrayBuffer[util.BitSet]
+
+    // Computed when the component of a vertex is finished
+    private val component = new ArrayBuffer[Int]
+    private val componentReachable = new ArrayBuffer[util.BitSet]
+    private val componentVariables = new ArrayBuffer[util.BitSet]
+    private val componentInputs = new ArrayBuffer[util.BitSet]
+    private val componentTaintSets = new ArrayBuffer[TaintSet]
+
+    // States of Tarjan's algorithm
+    private val index = new ArrayBuffer[Int]
+    private val lowLink = new ArrayBuffer[Int]
+    private val onStack = new ArrayBuffer[Boolean]
+    private val stack = new mutable.ArrayStack[Int]
+    private var nextIndex = 0
+
+    def taintSet(node: Node, isExpression: Boolean, debug: Boolean): TaintSet = {
+      val c = componentOf(vertex(node, isExpression), debug)
+      if (componentTaintSets(c) == null)
+        componentTaintSets(c) = TaintSet(symbolTable, componentVariables(c), componentInputs(c))
+      componentTaintSets(c)
+    }
+
+    def taintSetAvoiding(nodes: Iterable[Node], avoid: Node, debug: Boolean): TaintSet = {
+      // Vertices are discovered lazily, so the avoided vertex must exist before any path to it is explored
+      val avoided = vertex(avoid, isExpression = false)
+      val allVariables = new util.BitSet
+      val inputs = new util.BitSet
+      val visited = new util.BitSet
+      val worklist = new mutable.ArrayStack[Int]
+      nodes.foreach(node => worklist.push(vertex(node, isExpression = false)))
+      while (worklist.nonEmpty) {
+        val v = worklist.pop()
+        if (!visited.get(v) && v != avoided) {
+          visited.set(v)
+          val c = componentOf(v, debug)
+          if (componentReachable(c).get(avoided)) {
+            allVariables.or(ownVariables(v))
+            inputs.or(ownInputs(v))
+            successors(v).foreach(w => worklist.push(w))
+          }
+          else {
+            allVariables.or(componentVariables(c))
+            inputs.or(componentInputs(c))
+          }
+        }
+      }
+      TaintSet(symbolTable, allVariables, inputs)
+    }
+
+    private def vertex(node: Node, isExpression: Boolean): Int = {
+      val vertices = if (isExpression) expressionVertices else statementVertices
+      val existing = vertices.get(node)
+      if (existing != null) existing.intValue()
+      else {
+        val v = vertexNodes.size
+        vertices.put(node, v)
+        vertexNodes.append(node)
+        vertexIsExpression.append(isExpression)
+        successors.append(null)
+        ownVariables.append(null)
+        ownInputs.append(null)
+        component.append(-1)
+        index.append(-1)
+        lowLink.append(-1)
+        onStack.append(false)
+        v
+      }
+    }
+
+    private def expand(v: Int, debug: Boolean): Array[Int] = {
+      if (successors(v) == null) {
+        val node = vertexNodes(v)
+        val isExpression = vertexIsExpression(v)
+        traceOrError(s"Visit node `$node`", debug)
+
+        val usedVariables: Set[String] = {
+          val usedVariables = CFGUtils.getUsedVariables(node, isExpression)
+          if (excludeResourceVariables) usedVariables.filter(identifier => !GhostVariableUtils.isGhostVariable(identifier, Resource))
+          else usedVariables
+        }
+        traceOrError(s"Used variables: $usedVariables", debug)
+
+        val definitions: Set[ReachingValue] = reachingDefinitions.get(node) match {
+          case Some(definitions) =>
+            val newDefinitions = definitions.filter(definition => usedVariables.contains(definition.variable))
+            traceOrError(s"Reaching definitions: $definitions. Used: $newDefinitions", debug)
+            newDefinitions
+          case None => Set()
+        }
+
+        val variableBits = symbolTable.intern(usedVariables)
+        // Definitions without nodes come from input variables
+        val inputBits = symbolTable.intern(definitions.filter(definition => definition.node.isEmpty).map(definition => definition.variable))
+
+        val dataSuccessors = definitions.toList.flatMap(definition => definition.node).map(uniqueNode => vertex(uniqueNode.node, isExpression = false))
+        val controlSuccessors = {
+          if (!includeControlDependency) Nil
+          else {
+            controlDependency.get(node.getBlock) match {
+              case Some(blocks) =>
+                blocks.toList.flatMap({
+                  block =>
+                    traceOrError(s"Compute taint set for conditional node $node", debug)
+                    DependencyAnalysis.getCondition(node, block, debug)
+                }).map(condition => vertex(condition, isExpression = true))
+              case None => Nil
+            }
+          }
+        }
+
+        ownVariables(v) = variableBits
+        ownInputs(v) = inputBits
+        successors(v) = (dataSuccessors ++ controlSuccessors).distinct.toArray
+      }
+      successors(v)
+    }
+
+    private def componentOf(v: Int, debug: Boolean): Int = {
+      if (component(v) == -1) strongConnect(v, debug)
+      component(v)
+    }
+
+    private def strongConnect(v: Int, debug: Boolean): Unit = {
+      index(v) = nextIndex
+      lowLink(v) = nextIndex
+      nextIndex = nextIndex + 1
+      stack.push(v)
+      onStack(v) = true
+
+      expand(v, debug).foreach({
+        w =>
+          if (component(w) == -1) { // Otherwise, `w` is in a finished component
+            if (index(w) == -1) {
+              strongConnect(w, debug)
+              lowLink(v) = Math.min(lowLink(v), lowLink(w))
+            }
+            else if (onStack(w)) lowLink(v) = Math.min(lowLink(v), index(w))
+          }
+      })
+
+      if (lowLink(v) == index(v)) {
+        val c = componentReachable.size
+        val members = new ArrayBuffer[Int]
+        var w = -1
+        do {
+          w = stack.pop()
+          onStack(w) = false
+          component(w) = c
+          members.append(w)
+        } while (w != v)
+
+        val reachable = new util.BitSet
+        val allVariables = new util.BitSet
+        val inputs = new util.BitSet
+        members.foreach({
+          member =>
+            reachable.set(member)
+            allVariables.or(ownVariables(member))
+            inputs.or(ownInputs(member))
+            successors(member).foreach({
+              successor =>
+                val successorComponent = component(successor)
+                if (successorComponent != c) {
+                  reachable.or(componentReachable(successorComponent))
+                  allVariables.or(componentVariables(successorComponent))
+                  inputs.or(componentInputs(successorComponent))
+                }
+            })
+        })
+        componentReachable.append(reachable)
+        componentVariables.append(allVariables)
+        componentInputs.append(inputs)
+        componentTaintSets.append(null)
+      }
+    }
+  }
+}
@@ -1,40 +1,63 @@
 package brbo.verification.dependency
 
 import brbo.common.TargetMethod
-import brbo.verification.dependency.reachdef.{ReachingStore, ReachingTransfer, ReachingValue}
+import brbo.verification.dependency.reachdef.{DefinitionTable, ReachingStore, ReachingTransfer, ReachingValue}
 import com.sun.source.tree.Tree
 import org.apache.logging.log4j.LogManager
 import org.checkerframework.dataflow.analysis.{AnalysisResult, ForwardAnalysisImpl}
-import org.checkerframework.dataflow.cfg.node.Node
+import org.checkerframework.dataflow.cfg.ControlFlowGraph
+import org.checkerframework.dataflow.cfg.node.{AssignmentNode, Node}
+
+import java.util
+import scala.collection.JavaConverters._
+import scala.collection.mutable
 
 object ReachingDefinition {
   private val logger = LogManager.getLogger("brbo.verification.dependency.ReachingDefinition")
 
-  private val transfer = new ReachingTransfer()
-  private val forwardAnalysisImpl = new ForwardAnalysisImpl[ReachingValue, ReachingStore, ReachingTransfer](transfer)
-
   /**
    *
    * @return For each node, what are the definitions that can reach it (before it is executed)
    */
   def run(targetMethod: TargetMethod): ReachingDefinition = {
+    // Every run has its own analysis, such that files can be analyzed concurrently. In addition, the stores are
+    // materialized here, because querying an analysis result re-runs the transfer function through the analysis
     val cfg = targetMethod.cfg
+    val table = {
+      val inputs = targetMethod.methodTree.getParameters.asScala.map(parameter => parameter.getName.toString).toList
+      val assignments = cfg.getAllNodes.asScala.toList.collect({ case assignment: AssignmentNode => assignment })
+      new DefinitionTable(inputs, assignments)
+    }
+    val forwardAnalysisImpl = new ForwardAnalysisImpl[ReachingValue, ReachingStore, ReachingTransfer](new ReachingTransfer(table))
     forwardAnalysisImpl.performAnalysis(cfg)
     val result: AnalysisResult[ReachingValue, ReachingStore] = forwardAnalysisImpl.getResult
-    new ReachingDefinition(result)
+
+    // Many nodes (e.g., all nodes in a basic block without assignments) share the same definitions
+    val materialized = new mutable.HashMap[util.BitSet, Set[ReachingValue]]
+    val storesBefore = new util.IdentityHashMap[Node, Set[ReachingValue]]
+    cfg.getAllNodes.asScala.foreach({
+      node =>
+        val store = result.getStoreBefore(node)
+        if (store != null) storesBefore.put(node, materialized.getOrElseUpdate(store.bits, table.toValues(store.bits)))
+    })
+    logger.trace(s"`${table.size}` definitions and `${materialized.size}` distinct stores in method `${targetMethod.methodTree.getName}`")
+    new ReachingDefinition(cfg, storesBefore)
   }
 }
 
-class ReachingDefinition(result: AnalysisResult[ReachingValue, ReachingStore]) {
-  def get(node: Node): Option[Set[ReachingValue]] = {
-    val store = result.getStoreBefore(node)
-    if (store == null) None
-    else Some(store.definitions)
-  }
+/**
+ * Immutable once constructed, and hence can be queried from multiple threads
+ */
+class ReachingDefinition private(cfg: ControlFlowGraph, storesBefore: util.IdentityHashMap[Node, Set[ReachingValue]]) {
+  def get(node: Node): Option[Set[ReachingValue]] = Option(storesBefore.get(node))
 
   def get(tree: Tree): Option[Set[ReachingValue]] = {
-    val store = result.getStoreBefore(tree)
-    if (store == null) None
-    else Some(store.definitions)
+    val nodes = cfg.getNodesCorrespondingToTree(tree)
+    if (nodes == null) None
+    else {
+      val stores = nodes.asScala.toList.flatMap(node => get(node))
+      if (stores.isEmpty) None
+      else Some(stores.reduce((s1, s2) => s1 ++ s2))
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package brbo.verification.dependency.reachdef
+
+import brbo.common.cfg.UniqueNode
+import org.checkerframework.dataflow.cfg.node.{AssignmentNode, Node}
+
+import java.util
+
+/**
+ * Number all definitions in a method, such that a set of definitions is a bit set. Definitions of input variables come
+ * first, followed by assignments
+ *
+ * @param inputs      Input variables, which are defined at the method entry
+ * @param assignments Assignments in the method
+ */
+class DefinitionTable(inputs: List[String], assignments: List[AssignmentNode]) {
+  private val values: Array[ReachingValue] =
+    (inputs.map(input => ReachingValue(None, input)) ++
+      assignments.map(assignment => ReachingValue(Some(UniqueNode(assignment)), assignment.getTarget.toString))).toArray
+
+  private val assignmentIndices = new util.IdentityHashMap[Node, Integer]
+  assignments.zipWithIndex.foreach({ case (assignment, index) => assignmentIndices.put(assignment, inputs.size + index) })
+
+  // All definitions of a variable, which are killed by any assignment to the variable
+  private val killMasks: Map[String, util.BitSet] =
+    values.indices.groupBy(index => values(index).variable).map({
+      case (variable, indices) =>
+        val mask = new util.BitSet(values.length)
+        indices.foreach(index => mask.set(index))
+        (variable, mask)
+    })
+
+  val size: Int = values.length
+
+  def inputIndex(input: String): Int = {
+    val index = inputs.indexOf(input)
+    assert(index != -1, s"Unknown input variable `$input`")
+    index
+  }
+
+  def assignmentIndex(assignment: AssignmentNode): Int = {
+    val index = assignmentIndices.get(assignment)
+    assert(index != null, s"Unknown assignment `$assignment`")
+    index
+  }
+
+  def killMask(variable: String): util.BitSet = killMasks(variable)
+
+  def toValues(definitions: util.BitSet): Set[ReachingValue] = {
+    var result = Set[ReachingValue]()
+    var index = definitions.nextSetBit(0)
+    while (index >= 0) {
+      result = result + values(index)
+      index = definitions.nextSetBit(index + 1)
+    }
+    result
+  }
+}
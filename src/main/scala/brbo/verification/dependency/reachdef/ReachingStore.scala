@@ -4,17 +4,28 @@ import org.checkerframework.dataflow.analysis.Store
 import org.checkerframework.dataflow.cfg.visualize.CFGVisualizer
 import org.checkerframework.dataflow.expression.JavaExpression
 
-case class ReachingStore(definitions: Set[ReachingValue]) extends Store[ReachingStore] {
+import java.util
+
+/**
+ *
+ * @param bits  The numbers of definitions in the table. Never mutated once the store is created
+ * @param table The numbering of all definitions in the method
+ */
+case class ReachingStore(bits: util.BitSet, table: DefinitionTable) extends Store[ReachingStore] {
+  def definitions: Set[ReachingValue] = table.toValues(bits)
+
   override def widenedUpperBound(previous: ReachingStore): ReachingStore = {
     ???
   }
 
   override def leastUpperBound(other: ReachingStore): ReachingStore = {
-    ReachingStore(definitions ++ other.definitions)
+    val union = bits.clone().asInstanceOf[util.BitSet]
+    union.or(other.bits)
+    ReachingStore(union, table)
   }
 
   override def copy(): ReachingStore = {
-    ReachingStore(definitions)
+    ReachingStore(bits, table)
   }
 
   override def canAlias(a: JavaExpression, b: JavaExpression): Boolean = true
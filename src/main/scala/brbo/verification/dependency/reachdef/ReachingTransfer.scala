@@ -1,6 +1,5 @@
 package brbo.verification.dependency.reachdef
 
-import brbo.common.cfg.UniqueNode
 import org.apache.logging.log4j.{LogManager, Logger}
 import org.checkerframework.dataflow.analysis.{ForwardTransferFunction, RegularTransferResult, TransferInput, TransferResult}
 import org.checkerframework.dataflow.cfg.UnderlyingAST
@@ -8,13 +7,19 @@ import org.checkerframework.dataflow.cfg.node._
 
 import scala.collection.JavaConverters._
 
-class ReachingTransfer
+/**
+ *
+ * @param table The numbering of all definitions in the method to be analyzed
+ */
+class ReachingTransfer(table: DefinitionTable)
   extends AbstractNodeVisitor[TransferResult[ReachingValue, ReachingStore], TransferInput[ReachingValue, ReachingStore]]
     with ForwardTransferFunction[ReachingValue, ReachingStore] {
   private val logger: Logger = LogManager.getLogger(classOf[ReachingTransfer])
 
   override def initialStore(underlyingAST: UnderlyingAST, parameters: java.util.List[LocalVariableNode]): ReachingStore = {
-    ReachingStore(parameters.asScala.map(n => ReachingValue(None, n.getName)).toSet)
+    val definitions = new java.util.BitSet(table.size)
+    parameters.asScala.foreach(n => definitions.set(table.inputIndex(n.getName)))
+    ReachingStore(definitions, table)
   }
 
   override def visitNode(n: Node, p: TransferInput[ReachingValue, ReachingStore]): TransferResult[ReachingValue, ReachingStore] = {
@@ -24,15 +29,14 @@ class ReachingTransfer
   // Ignore `VariableDeclarationNode`, because it contains no initializer!
   // E.g., `int x = 0` is represented as a declaration node `int x` and an assignment node `x = 0`
   override def visitAssignment(n: AssignmentNode, p: TransferInput[ReachingValue, ReachingStore]): TransferResult[ReachingValue, ReachingStore] = {
-    val inputDefinitions = super.visitAssignment(n, p).getRegularStore.definitions
+    val inputDefinitions = super.visitAssignment(n, p).getRegularStore.bits
     val definedVariable = n.getTarget.toString
-    val newDefinitions = {
-      val killed = inputDefinitions.filter(value => value.variable == definedVariable)
-      val generated = ReachingValue(Some(UniqueNode(n)), definedVariable)
-      val result = inputDefinitions -- killed + generated
-      logger.trace(s"[Assignment] Node `$n`\nInput: $inputDefinitions\nKilled: $killed\nGenerated: $generated\nResult: $result")
-      result
+    val newDefinitions = inputDefinitions.clone().asInstanceOf[java.util.BitSet]
+    newDefinitions.andNot(table.killMask(definedVariable))
+    newDefinitions.set(table.assignmentIndex(n))
+    if (logger.isTraceEnabled) {
+      logger.trace(s"[Assignment] Node `$n`\nInput: ${table.toValues(inputDefinitions)}\nResult: ${table.toValues(newDefinitions)}")
     }
-    new RegularTransferResult(null, ReachingStore(newDefinitions))
+    new RegularTransferResult(null, ReachingStore(newDefinitions, table))
   }
 }
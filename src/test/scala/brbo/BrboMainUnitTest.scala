@@ -0,0 +1,20 @@
+package brbo
+
+import brbo.verification.BasicProcessor
+import org.scalatest.flatspec.AnyFlatSpec
+
+class BrboMainUnitTest extends AnyFlatSpec {
+  "Counting lines" should "count the lines of the file when the file has a single method" in {
+    val program =
+      """class Test01 {
+        |  void f(int n)
+        |  {
+        |    int R = 0;
+        |    R = R + n;
+        |  }
+        |}""".stripMargin
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    assert(BrboMain.numberOfLines(targetMethod, qualifyByMethods = false) == 7)
+    assert(BrboMain.numberOfLines(targetMethod, qualifyByMethods = true) == 5)
+  }
+}
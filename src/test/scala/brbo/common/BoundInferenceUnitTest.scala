@@ -3,6 +3,8 @@ package brbo.common
 import brbo.common.BeforeOrAfterOrThis.AFTER
 import brbo.common.CommandLineArguments.DEFAULT_ARGUMENTS
 import brbo.common.GhostVariableUtils.GhostVariable.Resource
+import brbo.common.icra.Icra
+import brbo.verification.AmortizationMode.UNKNOWN
 import brbo.verification.BasicProcessor
 import brbo.{StringCompare, TestCase, TestCaseJavaProgram}
 import com.sun.source.tree.ExpressionStatementTree
@@ -21,31 +23,77 @@ class BoundInferenceUnitTest extends AnyFlatSpec {
   "Inferring bounds" should "be correct" in {
     BoundInferenceUnitTest.inferBoundUnitTest.foreach({
       testCase =>
-        val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
-        val boundInference = new BoundInference(targetMethod, DEFAULT_ARGUMENTS)
-        val solver = new Z3Solver
-        val result = boundInference.inferBound(
-          solver,
-          Locations(
-            {
-              case expressionStatementTree: ExpressionStatementTree =>
-                GhostVariableUtils.extractUpdate(expressionStatementTree.getExpression, Resource) match {
-                  case Some(_) => true
-                  case None => false
-                }
-              case _ => false
-            },
-            AFTER
-          ),
-          "R",
-          maxDegree = 2
-        )
-        assert(StringCompare.ignoreWhitespaces(result.toString, testCase.expectedOutput, s"${testCase.className} failed"))
+        val result = inferBound(testCase, DEFAULT_ARGUMENTS)
+        assert(StringCompare.ignoreWhitespaces(result, testCase.expectedOutput, s"${testCase.className} failed"))
     })
   }
+
+  it should "infer the same bounds when searching coefficients in parallel" in {
+    val arguments = new CommandLineArguments
+    arguments.initialize(UNKNOWN, debugMode = false, "", skipSanityCheck = false,
+      printCounterExample = false, printIcraInputs = false, icraTimeout = 20,
+      printCFG = false, decomposeOnly = false, lessPreciseBound = false, generateSynthetic = 0, icraPath = Icra.ICRA_PATH,
+      parallelSearch = true)
+    BoundInferenceUnitTest.inferBoundUnitTest.foreach({
+      testCase =>
+        assert(inferBound(testCase, arguments) == inferBound(testCase, DEFAULT_ARGUMENTS), testCase.className)
+    })
+  }
+
+  private def inferBound(testCase: TestCaseJavaProgram, arguments: CommandLineArguments): String = {
+    val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+    val boundInference = new BoundInference(targetMethod, arguments)
+    boundInference.inferBound(new Z3Solver, BoundInferenceUnitTest.locations, "R", maxDegree = 2).toString
+  }
+
+  "Packing guesses into a C program" should "map every assertion line back to its own guess" in {
+    val testCase = BoundInferenceUnitTest.inferBoundUnitTest.head
+    val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+    val assertions = BoundInferenceUnitTest.guesses.map(polynomial => s"R <= ${polynomial.toString}")
+    val (cProgram, lineRanges) = InvariantInference.translateToCAndInsertAssertionsPacked(targetMethod, BoundInferenceUnitTest.locations, assertions)
+    val lines = cProgram.split("\n").toList
+    assert(lineRanges.size == assertions.size)
+    lineRanges.zip(assertions).foreach({
+      case ((firstLine, lastLine), assertion) =>
+        // Line numbers start from 1
+        val assertionLines = lines.slice(firstLine - 1, lastLine).filter(line => line.contains("assert("))
+        assert(assertionLines.nonEmpty, assertion)
+        assert(assertionLines.forall(line => line.contains(s"assert($assertion)")), assertion)
+    })
+    // Copies do not overlap, and no assertion of any copy is outside of the line ranges
+    assert(lineRanges.zip(lineRanges.tail).forall({ case ((_, lastLine), (firstLine, _)) => lastLine < firstLine }))
+    assert(lines.drop(lineRanges.last._2).forall(line => !line.contains("assert(R")))
+  }
+
+  it should "check guesses the same as checking them individually" in {
+    val testCase = BoundInferenceUnitTest.inferBoundUnitTest.head
+    val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+    val arguments = new CommandLineArguments
+    arguments.initialize(UNKNOWN, debugMode = false, "", skipSanityCheck = false,
+      printCounterExample = false, printIcraInputs = false, icraTimeout = 20,
+      printCFG = false, decomposeOnly = false, lessPreciseBound = false, generateSynthetic = 0, icraPath = Icra.ICRA_PATH,
+      icraPack = BoundInferenceUnitTest.guesses.size)
+    val packed = new BoundInference(targetMethod, arguments).checkGuesses(BoundInferenceUnitTest.locations, BoundInferenceUnitTest.guesses, "R")
+    val unpacked = new BoundInference(targetMethod, DEFAULT_ARGUMENTS).checkGuesses(BoundInferenceUnitTest.locations, BoundInferenceUnitTest.guesses, "R")
+    assert(packed == unpacked)
+    assert(unpacked == List(false, true, true))
+  }
 }
 
 object BoundInferenceUnitTest {
+  private val locations = Locations(
+    {
+      case expressionStatementTree: ExpressionStatementTree =>
+        GhostVariableUtils.extractUpdate(expressionStatementTree.getExpression, Resource).isDefined
+      case _ => false
+    },
+    AFTER
+  )
+
+  // Guesses `R <= 0`, `R <= 1 + n` and `R <= 8 + 8n` for `Test01` in `inferBoundUnitTest`
+  private val guesses: List[BoundInference.Polynomial] =
+    List(0, 1, 8).map(coefficient => BoundInference.generateTemplateInvariant(1, coefficient, List("n")))
+
   val generateTemplatePolynomialUnitTest: List[TestCase] = {
     val test01Expected =
       """(100 * 1 * 1 * 1) + (100 * 1 * 1 * 1 * z) + (100 * 1 * x * 1 * 1) + (100 * 1 * 1 * y * 1)""".stripMargin
@@ -0,0 +1,99 @@
+package brbo.common
+
+import brbo.common.icra.IcraCache
+import org.apache.commons.io.FileUtils
+import org.scalatest.flatspec.AnyFlatSpec
+
+import java.nio.file.Files
+
+class IcraCacheUnitTest extends AnyFlatSpec {
+  private val program1 =
+    """void main(int n) {
+      |  int R = 0;
+      |  int i = 0;
+      |  while (i < n) { i = i + 1; R = R + 1; }
+      |  assert(R <= n);
+      |}""".stripMargin
+
+  private val program2 =
+    """void main(int m) {
+      |  int R = 0;
+      |  int j = 0;
+      |  while (j < m) { j = j + 1; R = R + 1; }
+      |  assert(R <= m);
+      |}""".stripMargin
+
+  private val program3 =
+    """void main(int n) {
+      |  int R = 0;
+      |  assert(R <= n);
+      |}""".stripMargin
+
+  "Normalizing alpha-equivalent programs" should "produce the same key" in {
+    val key1 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program1, "-flag", "")
+    val key2 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program2, "-flag", "")
+    val key3 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program3, "-flag", "")
+    val key4 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program1, "-another-flag", "")
+    val key5 = IcraCache.computeKey(IcraCache.INVARIANTS, program1, "-flag", "")
+    assert(key1.digest == key2.digest)
+    assert(key1.digest != key3.digest)
+    assert(key1.digest != key4.digest)
+    assert(key1.digest != key5.digest)
+  }
+
+  it should "distinguish programs that only differ in keywords" in {
+    def program(keyword: String): String =
+      s"""void main(int n) {
+         |  int R = 0;
+         |  int i = 0;
+         |  while (i < n) { i = i + 1; if (i > 5) { $keyword; } R = R + 1; }
+         |  assert(R <= n);
+         |}""".stripMargin
+
+    val key1 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program("break"), "-flag", "")
+    val key2 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program("continue"), "-flag", "")
+    assert(key1.digest != key2.digest)
+    assert(!key1.renaming.contains("break") && !key1.renaming.contains("assert"))
+  }
+
+  "ICRA cache" should "return results in terms of the variables of the queried program" in {
+    val directory = Files.createTempDirectory("icra-cache-").toFile
+    try {
+      val cache = new IcraCache(directory, 1024 * 1024)
+      val key1 = IcraCache.computeKey(IcraCache.INVARIANTS, program1, "-flag", "")
+      val key2 = IcraCache.computeKey(IcraCache.INVARIANTS, program2, "-flag", "")
+      assert(cache.getInvariants(key2).isEmpty)
+      cache.putInvariants(key1, "Base relation: {when (i:0 <= n:1 /\\ R:2 = i:0)}")
+      assert(cache.getInvariants(key2).contains("Base relation: {when (j:0 <= m:1 /\\ R:2 = j:0)}"))
+
+      val checkKey1 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program1, "-flag", "")
+      cache.putAssertionChecks(checkKey1, List(true, false))
+      // Entries are persisted across instances
+      val cache2 = new IcraCache(directory, 1024 * 1024)
+      assert(cache2.getAssertionChecks(checkKey1).contains(List(true, false)))
+    }
+    finally {
+      FileUtils.deleteDirectory(directory)
+    }
+  }
+
+  it should "evict the least recently used entries" in {
+    val directory = Files.createTempDirectory("icra-cache-").toFile
+    try {
+      val cache = new IcraCache(directory, 2 * (IcraCache.ASSERTION_CHECKS.length + 12))
+      val key1 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program1, "-flag", "")
+      val key3 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program3, "-flag", "")
+      val key4 = IcraCache.computeKey(IcraCache.ASSERTION_CHECKS, program1, "-another-flag", "")
+      cache.putAssertionChecks(key1, List(true))
+      cache.putAssertionChecks(key3, List(true))
+      assert(cache.getAssertionChecks(key1).isDefined) // Entry 3 becomes the least recently used
+      cache.putAssertionChecks(key4, List(false))
+      assert(cache.getAssertionChecks(key3).isEmpty)
+      assert(cache.getAssertionChecks(key1).contains(List(true)))
+      assert(cache.getAssertionChecks(key4).contains(List(false)))
+    }
+    finally {
+      FileUtils.deleteDirectory(directory)
+    }
+  }
+}
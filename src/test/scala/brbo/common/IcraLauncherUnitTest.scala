@@ -0,0 +1,42 @@
+package brbo.common
+
+import brbo.common.icra.IcraLauncher
+import org.scalatest.flatspec.AnyFlatSpec
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+class IcraLauncherUnitTest extends AnyFlatSpec {
+  "Launching a process" should "return its stdout" in {
+    val launcher = new IcraLauncher(IcraLauncher.defaultScratchRoot, maxConcurrentProcesses = 2)
+    try {
+      // Act as ICRA with `cat`, which prints the input program
+      assert(launcher.run("int x;\nint y;", timeout = 10, icraPath = "cat", icraFlags = "") == Some("int x;int y;"))
+      assert(launcher.run("int z;", timeout = -1, icraPath = "cat", icraFlags = "") == Some("int z;"))
+    }
+    finally {
+      launcher.shutdown()
+    }
+  }
+
+  it should "kill the process group if the process times out" in {
+    val directory = Files.createTempDirectory("brbo-launcher-test")
+    val marker = directory.resolve("marker")
+    // Act as ICRA with a script whose child process would create a file if it were not killed
+    val script = directory.resolve("slow.sh")
+    Files.write(script, s"#!/bin/sh\n(sleep 3; touch $marker) &\nsleep 10\n".getBytes(StandardCharsets.UTF_8))
+    script.toFile.setExecutable(true)
+
+    val launcher = new IcraLauncher(IcraLauncher.defaultScratchRoot, maxConcurrentProcesses = 1)
+    try {
+      val start = System.nanoTime()
+      assert(launcher.run("", timeout = 1, icraPath = script.toString, icraFlags = "").isEmpty)
+      assert(System.nanoTime() - start < 5L * 1000 * 1000 * 1000)
+      Thread.sleep(4000)
+      assert(!Files.exists(marker))
+    }
+    finally {
+      launcher.shutdown()
+    }
+  }
+}
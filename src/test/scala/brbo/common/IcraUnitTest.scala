@@ -108,6 +108,11 @@ class IcraUnitTest extends AnyFlatSpec {
         assert(StringCompare.ignoreWhitespaces(result, testCase.expectedOutput, s"${testCase.name} failed"))
     })
   }
+
+  it should "attribute each verdict to the line of its assertion" in {
+    val icraOutput = "Is SAT! (Assertion on line 48 FAILED)*****Is not SAT! (Assertion on line 63 PASSED)*****Is not SAT! (Assertion on line 70 PASSED)"
+    assert(Icra.parseAssertionChecksPerLine(icraOutput) == List((48, false), (63, true), (70, true)))
+  }
 }
 
 object IcraUnitTest {
@@ -0,0 +1,76 @@
+package brbo.common
+
+import brbo.common.cfg.CFGUtils
+import brbo.verification.BasicProcessor
+import com.ibm.wala.util.graph.dominators.Dominators
+import org.scalatest.flatspec.AnyFlatSpec
+
+import scala.collection.JavaConverters._
+
+class IndexedCFGUnitTest extends AnyFlatSpec {
+  private val program =
+    """class Test01 {
+      |  void f(int n, int m)
+      |  {
+      |    int R = 0;
+      |    int i = 0;
+      |    while (i < n) {
+      |      int j = 0;
+      |      while (j < m) {
+      |        if (j > i) {
+      |          R = R + 1;
+      |        }
+      |        else {
+      |          R = R + 2;
+      |        }
+      |        j++;
+      |      }
+      |      i++;
+      |    }
+      |  }
+      |}""".stripMargin
+
+  "Indexed CFGs" should "agree with dominators of the CFG" in {
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val indexedCFG = targetMethod.indexedCFG
+    val dominators = Dominators.make(indexedCFG.graph, indexedCFG.root)
+    indexedCFG.graph.asScala.foreach({
+      brboNode1 =>
+        indexedCFG.graph.asScala.foreach({
+          brboNode2 =>
+            assert(indexedCFG.isDominatedBy(brboNode1.block, brboNode2.block) == dominators.isDominatedBy(brboNode1, brboNode2),
+              s"Block `${brboNode1.block.getUid}` and block `${brboNode2.block.getUid}`")
+        })
+    })
+  }
+
+  it should "index nodes in blocks" in {
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val indexedCFG = targetMethod.indexedCFG
+    targetMethod.cfg.getAllNodes.asScala.foreach({
+      node =>
+        assert(indexedCFG.nodeIndexInBlock(node) == CFGUtils.getNodeIndexInBlock(node))
+        assert(indexedCFG.nodes(indexedCFG.blockIndex(node.getBlock))(indexedCFG.nodeIndexInBlock(node)) eq node)
+    })
+    indexedCFG.blocks.indices.foreach({
+      index =>
+        assert(indexedCFG.successors(index).forall(successor => indexedCFG.predecessors(successor).contains(index)))
+    })
+  }
+
+  it should "find common dominators from the lowest to the highest" in {
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val indexedCFG = targetMethod.indexedCFG
+    val allNodes = targetMethod.cfg.getAllNodes.asScala.toList
+    val updates = targetMethod.sortedCommands.filter(command => command.toString.startsWith("R = R +"))
+    assert(updates.size == 2)
+    val targets = updates.flatMap(update => targetMethod.commandsNodesMap(update).map(u => u.node))
+    val commonDominators = indexedCFG.commonDominators(targets)
+    val expected = allNodes.filter(node => targets.forall(target => indexedCFG.isDominatedBy(target, node)))
+    assert(commonDominators.size == expected.size)
+    assert(expected.forall(node => commonDominators.exists(dominator => dominator eq node)))
+    commonDominators.zip(commonDominators.tail).foreach({
+      case (lower, higher) => assert(indexedCFG.isDominatedBy(lower, higher))
+    })
+  }
+}
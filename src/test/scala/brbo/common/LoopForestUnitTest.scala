@@ -0,0 +1,55 @@
+package brbo.common
+
+import brbo.verification.BasicProcessor
+import com.sun.source.tree.Tree
+import com.sun.source.util.TreeScanner
+import org.scalatest.flatspec.AnyFlatSpec
+
+class LoopForestUnitTest extends AnyFlatSpec {
+  "Loop forests" should "agree with enclosing loops computed from tree paths" in {
+    val program =
+      """class Test01 {
+        |  void f(int n, int m)
+        |  {
+        |    int R = 0;
+        |    for (int i = 0; i < n; i++) {
+        |      int j = 0;
+        |      while (j < m) {
+        |        if (j > i) {
+        |          R = R + 1;
+        |        }
+        |        j++;
+        |      }
+        |    }
+        |    int k = 0;
+        |    while (k < n) {
+        |      k++;
+        |    }
+        |  }
+        |}""".stripMargin
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val loopForest = targetMethod.loopForest
+
+    var trees: List[Tree] = Nil
+    new TreeScanner[Void, Void] {
+      override def scan(tree: Tree, p: Void): Void = {
+        if (tree != null) trees = tree :: trees
+        super.scan(tree, p)
+      }
+    }.scan(targetMethod.methodTree.getBody, null)
+
+    trees.foreach({
+      tree =>
+        val path = targetMethod.getPath(tree)
+        assert(loopForest.minimalEnclosingLoop(tree) == TreeUtils.getMinimalEnclosingLoop(path), tree)
+        assert(loopForest.maximalEnclosingLoop(tree) == TreeUtils.getMaximalEnclosingLoop(path), tree)
+    })
+
+    val update = targetMethod.sortedCommands.find(command => command.toString.contains("R = R + 1")).get
+    assert(loopForest.depth(update) == 2)
+    val increment = targetMethod.sortedCommands.find(command => command.toString.contains("k++")).get
+    assert(loopForest.depth(increment) == 1)
+    assert(loopForest.maximalEnclosingLoop(increment) == loopForest.minimalEnclosingLoop(increment))
+    assert(loopForest.depth(targetMethod.methodTree.getBody) == 0)
+  }
+}
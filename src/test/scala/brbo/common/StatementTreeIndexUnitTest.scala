@@ -0,0 +1,51 @@
+package brbo.common
+
+import brbo.verification.BasicProcessor
+import com.sun.source.tree.StatementTree
+import org.scalatest.flatspec.AnyFlatSpec
+
+class StatementTreeIndexUnitTest extends AnyFlatSpec {
+  private val program =
+    """class Test01 {
+      |  void f(int n, int m)
+      |  {
+      |    int R = 0;
+      |    for (int i = 0; i < n; i++) {
+      |      int j = 0;
+      |      while (j < m) {
+      |        if (j > i) {
+      |          R = R + 1;
+      |        }
+      |        else {
+      |          R = R + 2;
+      |        }
+      |        j++;
+      |      }
+      |    }
+      |    int k = 0;
+      |  }
+      |}""".stripMargin
+
+  "Statement tree indices" should "agree with collected statement trees" in {
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val treeIndex = targetMethod.statementTreeIndex
+    val trees: Set[StatementTree] = TreeUtils.collectStatementTrees(targetMethod.methodTree.getBody)
+    trees.foreach({
+      tree1 =>
+        val enclosed = TreeUtils.collectStatementTrees(tree1)
+        trees.foreach({
+          tree2 =>
+            assert(treeIndex.encloses(tree1, tree2) == enclosed.contains(tree2), s"`$tree1` and `$tree2`")
+            val overlap = enclosed.intersect(TreeUtils.collectStatementTrees(tree2)).nonEmpty
+            assert(treeIndex.overlap(List(tree1), List(tree2)) == overlap, s"`$tree1` and `$tree2`")
+        })
+    })
+  }
+
+  it should "order commands by their source positions" in {
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val lineNumbers = targetMethod.sortedCommands.map(command => targetMethod.getLineNumber(command))
+    assert(lineNumbers == lineNumbers.sorted)
+    assert(targetMethod.sortedCommands.size == TreeUtils.collectCommands(targetMethod.methodTree.getBody).size)
+  }
+}
@@ -0,0 +1,29 @@
+package brbo.common
+
+import brbo.verification.BasicProcessor
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TargetMethodUnitTest extends AnyFlatSpec {
+  "Facets of a method" should "be computed at most once" in {
+    val program =
+      """class Test01 {
+        |  void f(int n)
+        |  {
+        |    int R = 0;
+        |    for (int i = 0; i < n; i++) {
+        |      R = R + 1;
+        |    }
+        |  }
+        |}""".stripMargin
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    val reachingDefinitions = targetMethod.reachingDefinitions
+    val controlDependency = targetMethod.controlDependency
+    val hits = targetMethod.facetHits
+
+    assert(targetMethod.reachingDefinitions eq reachingDefinitions)
+    assert(targetMethod.reachingDefinitions eq reachingDefinitions)
+    assert(targetMethod.controlDependency eq controlDependency)
+    assert(targetMethod.facetHits("reachingDefinitions") == hits("reachingDefinitions") + 2)
+    assert(targetMethod.facetHits("controlDependency") == hits("controlDependency") + 1)
+  }
+}
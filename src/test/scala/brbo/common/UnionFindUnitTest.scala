@@ -0,0 +1,26 @@
+package brbo.common
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class UnionFindUnitTest extends AnyFlatSpec {
+  "Union find" should "maintain disjoint sets" in {
+    val unionFind = new UnionFind(6)
+    unionFind.union(0, 3)
+    unionFind.union(4, 5)
+    unionFind.union(5, 3)
+    assert(unionFind.find(0) == unionFind.find(4))
+    assert(unionFind.find(1) != unionFind.find(0))
+    assert(unionFind.representatives.map(representative => unionFind.find(representative)) == List(unionFind.find(0), 1, 2))
+  }
+
+  "Merging until a fixpoint" should "merge values that are merged transitively" in {
+    // Intervals that overlap are merged, where a merged interval may overlap with intervals that are not merged yet
+    val intervals = List((0, 1), (5, 6), (2, 3), (1, 2), (8, 9), (3, 5))
+    val result = UnionFind.mergeUntilFixpoint[(Int, Int)](
+      intervals,
+      (interval1, interval2) => interval1._1 <= interval2._2 && interval2._1 <= interval1._2,
+      (interval1, interval2) => (Math.min(interval1._1, interval2._1), Math.max(interval1._2, interval2._2))
+    )
+    assert(result == List((0, 6), (8, 9)))
+  }
+}
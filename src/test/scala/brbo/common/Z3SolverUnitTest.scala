@@ -0,0 +1,52 @@
+package brbo.common
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Future}
+
+class Z3SolverUnitTest extends AnyFlatSpec {
+  "Translating ASTs between solvers" should "preserve their meaning" in {
+    val solver = new Z3Solver
+    val ast = solver.mkLe(solver.mkIntVar("x"), solver.mkIntVal(3))
+
+    val results = Await.result(Future.traverse(List(2, 3, 4))({
+      value =>
+        Future {
+          val taskSolver = new Z3Solver
+          try {
+            taskSolver.mkAssert(taskSolver.translate(ast, solver))
+            taskSolver.mkAssert(taskSolver.mkEq(taskSolver.mkIntVar("x"), taskSolver.mkIntVal(value)))
+            taskSolver.checkSAT(printUnsatCore = false)
+          }
+          finally {
+            taskSolver.close()
+          }
+        }
+    }), Duration.Inf)
+    assert(results == List(true, true, false))
+
+    val taskSolver = new Z3Solver
+    val translated = solver.translate(taskSolver.mkGe(taskSolver.mkIntVar("x"), taskSolver.mkIntVal(3)), taskSolver)
+    taskSolver.close()
+    assert(solver.checkAssertionPushPop(solver.mkAnd(ast, translated), printUnsatCore = false))
+    assert(!solver.checkAssertionPushPop(solver.mkAnd(ast, translated, solver.mkNe(solver.mkIntVar("x"), solver.mkIntVal(3))), printUnsatCore = false))
+  }
+
+  "Checking satisfiability with Z3 processes" should "reuse processes across queries" in {
+    val pool = new Z3ProcessPool(Z3Solver.Z3_PATH, maxWorkers = 2, timeout = 10)
+    try {
+      val queries = List(
+        ("(declare-fun x () Int)\n(assert (<= x 3))", Z3ProcessPool.SAT),
+        ("(declare-fun x () Int)\n(assert (and (<= x 3) (> x 3)))", Z3ProcessPool.UNSAT),
+        ("(declare-fun x () Int)\n(assert (= x 4))", Z3ProcessPool.SAT) // Declarations of previous queries were popped
+      )
+      val results = Await.result(Future.traverse(queries ++ queries)({ case (query, _) => Future(pool.checkSAT(query)) }), Duration.Inf)
+      assert(results == (queries ++ queries).map({ case (_, expected) => expected }))
+    }
+    finally {
+      pool.shutdown()
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package brbo.common.javac
+
+import brbo.common.javac.JavacUtilsUnitTest.{parse, programs}
+import org.apache.logging.log4j.LogManager
+
+/**
+ * Measure the time of parsing and constructing CFGs with and without sharing file managers. Not part of the unit tests.
+ * Run with `sbt "Test/runMain brbo.common.javac.JavacUtilsBenchmark"`
+ */
+object JavacUtilsBenchmark {
+  private val logger = LogManager.getLogger("brbo.common.javac.JavacUtilsBenchmark")
+
+  def main(args: Array[String]): Unit = {
+    def averageMilliseconds(shareFileManager: Boolean): Double = {
+      val rounds = 3
+      val startTime = System.nanoTime()
+      (1 to rounds).foreach(_ => programs.foreach({ case (className, sourceCode) => parse(className, sourceCode, shareFileManager) }))
+      (System.nanoTime() - startTime).toDouble / 1000000 / (rounds * programs.size)
+    }
+
+    // Warm up the JVM and the pooled file manager
+    averageMilliseconds(shareFileManager = true)
+    averageMilliseconds(shareFileManager = false)
+    val before = averageMilliseconds(shareFileManager = false)
+    val after = averageMilliseconds(shareFileManager = true)
+    logger.info(f"Parse and construct CFGs: $before%.2f ms per call without sharing file managers. $after%.2f ms per call with sharing.")
+    JavacUtils.closeFileManagers()
+  }
+}
@@ -0,0 +1,46 @@
+package brbo.common.javac
+
+import brbo.verification.BasicProcessor
+import org.apache.commons.io.{FileUtils, FilenameUtils}
+import org.scalatest.flatspec.AnyFlatSpec
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+
+class JavacUtilsUnitTest extends AnyFlatSpec {
+  import JavacUtilsUnitTest.{parse, programs}
+
+  "Sharing file managers across compilations" should "not change results" in {
+    programs.foreach({
+      case (className, sourceCode) =>
+        assert(parse(className, sourceCode, shareFileManager = true) == parse(className, sourceCode, shareFileManager = false), className)
+    })
+  }
+
+  it should "reuse a single file manager across sequential compilations" in {
+    JavacUtils.closeFileManagers()
+    programs.take(3).foreach({ case (className, sourceCode) => parse(className, sourceCode, shareFileManager = true) })
+    assert(JavacUtils.numberOfIdleFileManagers == 1)
+    JavacUtils.closeFileManagers()
+    assert(JavacUtils.numberOfIdleFileManagers == 0)
+  }
+}
+
+object JavacUtilsUnitTest {
+  val programs: List[(String, String)] = {
+    val directory = new File("src/main/java/brbo/benchmarks/sas21/synthetic")
+    directory.listFiles().filter(file => file.getName.endsWith(".java")).sortBy(file => file.getName).take(20).map({
+      file =>
+        val className = s"brbo.benchmarks.sas21.synthetic.${FilenameUtils.getBaseName(file.getName)}"
+        (className, FileUtils.readFileToString(file, StandardCharsets.UTF_8))
+    }).toList
+  }
+
+  // The method and the number of nodes in its CFG
+  def parse(className: String, sourceCode: String, shareFileManager: Boolean): (String, Int) = {
+    val processor = new BasicProcessor
+    JavacUtils.runProcessor(className, sourceCode, processor, shareFileManager)
+    val (methodTree, cfg) = processor.getMethods.head
+    (methodTree.toString, cfg.getAllNodes.size())
+  }
+}
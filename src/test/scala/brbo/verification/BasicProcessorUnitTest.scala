@@ -0,0 +1,42 @@
+package brbo.verification
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+class BasicProcessorUnitTest extends AnyFlatSpec {
+  private val program =
+    """import brbo.benchmarks.Common;
+      |abstract class Test01 extends Common {
+      |  void f(int n)
+      |  {
+      |    int R = 0;
+      |    for (int i = 0; i < n; i++) {
+      |      R = R + 1;
+      |    }
+      |    mostPreciseBound(R <= n);
+      |  }
+      |
+      |  void g(int n)
+      |  {
+      |    int x = n + 1;
+      |  }
+      |
+      |  void h(int n, int m)
+      |  {
+      |    int R = 0;
+      |    R = R + m;
+      |    mostPreciseBound(R <= m);
+      |  }
+      |}""".stripMargin
+
+  "Compiling a class with multiple methods" should "build a target method for every method" in {
+    val targetMethods = BasicProcessor.getTargetMethods("Test01", program)
+    assert(targetMethods.map(targetMethod => targetMethod.methodTree.getName.toString) == List("f", "g", "h"))
+    assert(targetMethods.map(targetMethod => targetMethod.inputVariables.keySet) == List(Set("n"), Set("n"), Set("n", "m")))
+    assert(targetMethods.map(targetMethod => targetMethod.numberOfLines) == List(8, 4, 6))
+  }
+
+  it should "only build target methods that specify bounds" in {
+    val targetMethods = BasicProcessor.getTargetMethods("Test01", program, BoundChecking.specifiesBound)
+    assert(targetMethods.map(targetMethod => targetMethod.methodTree.getName.toString) == List("f", "h"))
+  }
+}
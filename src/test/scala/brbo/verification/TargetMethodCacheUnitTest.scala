@@ -0,0 +1,74 @@
+package brbo.verification
+
+import brbo.common.TargetMethod
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TargetMethodCacheUnitTest extends AnyFlatSpec {
+  private def program(bound: String): String =
+    s"""class Test01 {
+       |  void f(int n)
+       |  {
+       |    int R = 0;
+       |    for (int i = 0; i < $bound; i++) {
+       |      R = R + 1;
+       |    }
+       |  }
+       |}""".stripMargin
+
+  "Target method cache" should "return target methods that are already built" in {
+    val cache = new TargetMethodCache(Int.MaxValue)
+    var compiled = 0
+
+    def get(sourceCode: String): TargetMethod = {
+      cache.getOrCompute("Test01", sourceCode)({
+        compiled = compiled + 1
+        BasicProcessor.getTargetMethod("Test01", sourceCode)
+      })
+    }
+
+    val targetMethod1 = get(program("n"))
+    val targetMethod2 = get(program("n + 1"))
+    assert(get(program("n")) eq targetMethod1)
+    assert(get(program("n + 1")) eq targetMethod2)
+    assert(compiled == 2)
+    assert(cache.getHits == 2)
+    assert(cache.getMisses == 2)
+  }
+
+  it should "evict the least recently used target methods" in {
+    val cache = new TargetMethodCache(1)
+    var compiled = 0
+
+    def get(sourceCode: String): TargetMethod = {
+      cache.getOrCompute("Test01", sourceCode)({
+        compiled = compiled + 1
+        BasicProcessor.getTargetMethod("Test01", sourceCode)
+      })
+    }
+
+    get(program("n"))
+    get(program("1"))
+    get(program("n"))
+    assert(compiled == 3)
+    get(program("n"))
+    assert(compiled == 3)
+  }
+
+  it should "not cache anything if there are at most 0 entries" in {
+    val cache = new TargetMethodCache(0)
+    var compiled = 0
+    (1 to 2).foreach({
+      _ =>
+        cache.getOrCompute("Test01", program("n"))({
+          compiled = compiled + 1
+          BasicProcessor.getTargetMethods("Test01", program("n")).head
+        })
+    })
+    assert(compiled == 2)
+  }
+
+  "Compiling the same program again" should "not rebuild the target method" in {
+    val sourceCode = program("2 * n")
+    assert(BasicProcessor.getTargetMethod("Test01", sourceCode) eq BasicProcessor.getTargetMethod("Test01", sourceCode))
+  }
+}
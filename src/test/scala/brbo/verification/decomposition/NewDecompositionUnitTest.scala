@@ -1,6 +1,9 @@
 package brbo.verification.decomposition
 
+import brbo.common.CommandLineArguments
 import brbo.common.CommandLineArguments.DEFAULT_ARGUMENTS
+import brbo.common.icra.Icra
+import brbo.verification.AmortizationMode.UNKNOWN
 import brbo.verification.BasicProcessor
 import brbo.{StringCompare, TestCaseJavaProgram}
 import org.apache.logging.log4j.LogManager
@@ -21,6 +24,22 @@ class NewDecompositionUnitTest extends AnyFlatSpec {
     })
   }
 
+  it should "produce groups whose taint sets are the same as recomputed from their updates" in {
+    NewDecompositionUnitTest.mergeTests.foreach({
+      testCase =>
+        val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+        val decomposition = new NewDecomposition(targetMethod, DEFAULT_ARGUMENTS, testMode = true)
+        decomposition.mergeGroups(decomposition.initializeGroups()).elements.foreach({
+          group =>
+            val recomputed = decomposition.Group(group.resetLocation, group.updates)
+            assert(group.taintSets == recomputed.taintSets, testCase.className)
+            assert(group.taintSetsDataOnlyExcludeInputs == recomputed.taintSetsDataOnlyExcludeInputs, testCase.className)
+            val ids = group.updates.map(u => targetMethod.statementTreeIndex.id(u.statement))
+            assert(ids == ids.sorted, testCase.className)
+        })
+    })
+  }
+
   "Selective amortization" should "be correct" in {
     NewDecompositionUnitTest.decomposeSelectiveAmortizationUnitTest.foreach({
       testCase =>
@@ -32,6 +51,22 @@ class NewDecompositionUnitTest extends AnyFlatSpec {
     })
   }
 
+  it should "decide resets concurrently as sequentially" in {
+    val arguments = new CommandLineArguments
+    arguments.initialize(UNKNOWN, debugMode = false, "", skipSanityCheck = false,
+      printCounterExample = false, printIcraInputs = false, icraTimeout = 20,
+      printCFG = false, decomposeOnly = false, lessPreciseBound = false, generateSynthetic = 0, icraPath = Icra.ICRA_PATH,
+      decomposeJobs = 4)
+    NewDecompositionUnitTest.decomposeSelectiveAmortizationUnitTest.foreach({
+      testCase =>
+        val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+        val decomposition = new NewDecomposition(targetMethod, arguments, testMode = true)
+        val groups = decomposition.mergeGroups(decomposition.initializeGroups()).elements.toList
+        val expected = groups.map(group => decomposition.decideReset(group).toTestString)
+        assert(decomposition.decideResets(groups).map(group => group.toTestString) == expected, testCase.className)
+    })
+  }
+
   "No amortization" should "be correct" in {
     NewDecompositionUnitTest.decomposeNoAmortizationUnitTest.foreach({
       testCase =>
@@ -0,0 +1,34 @@
+package brbo.verification.decomposition
+
+import brbo.common.SymbolTable
+import org.scalatest.flatspec.AnyFlatSpec
+
+class TaintSetUnitTest extends AnyFlatSpec {
+  "Taint sets over one symbol table" should "behave as sets of variables" in {
+    val symbolTable = new SymbolTable
+    val taintSet1 = TaintSet(symbolTable, Set("R", "i", "n"), Set("n"))
+    val taintSet2 = TaintSet(symbolTable, Set("j", "m"), Set("m"))
+    val taintSet3 = TaintSet(symbolTable, Set("i", "k"), Set[String]())
+
+    assert((taintSet1 ++ taintSet2).toTestString == "All: List(R, i, j, m, n). Inputs: List(m, n)")
+    assert(TaintSet.merge(List(taintSet1, taintSet2, taintSet3)).toTestString == "All: List(R, i, j, k, m, n). Inputs: List(m, n)")
+    assert((taintSet1 -- Set("n", "x")).toTestString == "All: List(R, i). Inputs: List()")
+    assert(TaintSet.removeResourceVariables(taintSet1).toTestString == "All: List(i, n). Inputs: List(n)")
+
+    assert(!taintSet1.intersects(taintSet2))
+    assert(taintSet1.intersects(taintSet3))
+    assert(taintSet1.inputsIntersect(Set("n")))
+    assert(!taintSet1.inputsIntersect(Set("i", "x")))
+
+    assert(taintSet1 ++ taintSet3 == taintSet3 ++ taintSet1)
+  }
+
+  "Taint sets over different symbol tables" should "re-intern variables" in {
+    val taintSet1 = TaintSet(new SymbolTable, Set("x", "y"), Set("y"))
+    val taintSet2 = TaintSet(new SymbolTable, Set("y", "z"), Set("z"))
+
+    assert(taintSet1.intersects(taintSet2))
+    assert((taintSet1 ++ taintSet2).toTestString == "All: List(x, y, z). Inputs: List(y, z)")
+    assert(taintSet1 == TaintSet(Set("x", "y"), Set("y")))
+  }
+}
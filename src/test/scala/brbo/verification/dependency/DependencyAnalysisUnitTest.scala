@@ -2,11 +2,16 @@ package brbo.verification.dependency
 
 import brbo.{StringCompare, TestCaseJavaProgram}
 import brbo.common.CommandLineArguments.DEFAULT_ARGUMENTS
+import brbo.common.{GhostVariableUtils, SymbolTable, TargetMethod}
+import brbo.common.GhostVariableUtils.GhostVariable.Resource
 import brbo.verification.BasicProcessor
 import brbo.verification.decomposition.{DecompositionUnitTest, TaintSet}
 import org.apache.logging.log4j.LogManager
+import org.checkerframework.dataflow.cfg.node.Node
 import org.scalatest.flatspec.AnyFlatSpec
 
+import scala.collection.JavaConverters._
+
 class DependencyAnalysisUnitTest extends AnyFlatSpec {
   private val logger = LogManager.getLogger(classOf[DependencyAnalysisUnitTest])
 
@@ -23,15 +28,61 @@ class DependencyAnalysisUnitTest extends AnyFlatSpec {
     DependencyAnalysisUnitTest.dataDependencyTests.foreach({
       testCase =>
         val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
-        val reachingDefinitions = targetMethod.reachingDefinitions
+        val dependencyGraph = targetMethod.dependencyGraph
         val result = targetMethod.commandsNodesMap.map({
           case (command, nodes) =>
-            val taintSets = nodes.map(node => DependencyAnalysis.transitiveDataDependency(node.node, reachingDefinitions, Set(), excludeResourceVariables = true, debug = false))
+            val taintSets = nodes.map(node => DependencyAnalysis.transitiveDataDependency(node.node, dependencyGraph, excludeResourceVariables = true, debug = false))
             s"$command -> ${TaintSet.merge(taintSets).toTestString}"
         }).toList.sorted
         assert(StringCompare.ignoreWhitespaces(result, testCase.expectedOutput, testCase.className))
     })
   }
+
+  "Input variables that taint a variable" should "be correct" in {
+    val program =
+      """class Test01 {
+        |  void f(int n, int m, int l)
+        |  {
+        |    int C = 0;
+        |    int D = 0;
+        |    for (int i = 0; i < n; i++) {
+        |      C = C + 1;
+        |    }
+        |    if (l > 0) {
+        |      D = D + m;
+        |    }
+        |  }
+        |}""".stripMargin
+    val targetMethod = BasicProcessor.getTargetMethod("Test01", program)
+    assert(DependencyAnalysis.inputsTaintingVariable(targetMethod, "C", debug = false) == Set("n"))
+    assert(DependencyAnalysis.inputsTaintingVariable(targetMethod, "D", debug = false) == Set("l", "m"))
+  }
+
+  "Taint set per execution" should "not be tainted by the resource update itself" in {
+    val testCase = DependencyAnalysisUnitTest.taintSetPerExecutionTest
+    val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+    val update = resourceUpdate(targetMethod)
+    // Input `l` only taints the resource update via the update itself
+    val result = DependencyAnalysis.taintSetPerExecution(update, targetMethod.dependencyGraph, debug = false)
+    assert(result.toTestString == testCase.expectedOutput)
+    assert(DependencyAnalysis.taintSetPerExecution(update, targetMethod.dependencyGraph, debug = false) eq result)
+    assert(DependencyAnalysis.controlDataDependencyForResources(targetMethod, debug = false).inputs == Set("l", "m", "n"))
+  }
+
+  it should "avoid the resource update on a dependency graph that has never been queried" in {
+    val testCase = DependencyAnalysisUnitTest.taintSetPerExecutionTest
+    val targetMethod = BasicProcessor.getTargetMethod(testCase.className, testCase.inputProgram)
+    // A new graph, such that no vertex (including the resource update's) has been discovered by other queries
+    val dependencyGraph = new DependencyGraph(targetMethod.reachingDefinitions, targetMethod.controlDependency, new SymbolTable)
+    val result = DependencyAnalysis.taintSetPerExecution(resourceUpdate(targetMethod), dependencyGraph, debug = false)
+    assert(result.toTestString == testCase.expectedOutput)
+  }
+
+  private def resourceUpdate(targetMethod: TargetMethod): Node = {
+    val updates = targetMethod.cfg.getAllNodes.asScala.filter(node => GhostVariableUtils.extractUpdate(node, Resource).isDefined).toList
+    assert(updates.size == 1)
+    updates.head
+  }
 }
 
 object DependencyAnalysisUnitTest {
@@ -125,6 +176,28 @@ object DependencyAnalysisUnitTest {
       |  }
       |}""".stripMargin
 
+  val taintSetPerExecutionTest: TestCaseJavaProgram = {
+    val program =
+      """class Test01 {
+        |  void f(int n, int m, int l)
+        |  {
+        |    int R = 0;
+        |    int i = 0;
+        |    while (i < n) {
+        |      int x = m;
+        |      if (R > 0) {
+        |        x = 1;
+        |      }
+        |      if (l > 0) {
+        |        R = R + x;
+        |      }
+        |      i = i + 1;
+        |    }
+        |  }
+        |}""".stripMargin
+    TestCaseJavaProgram("Test01", program, "All: List(R, i, m, n, x). Inputs: List(m, n)")
+  }
+
   val taintSetTests: List[TestCaseJavaProgram] = {
     val test01ExpectedOutput =
       """All: List(R, a). Inputs: List()""".stripMargin
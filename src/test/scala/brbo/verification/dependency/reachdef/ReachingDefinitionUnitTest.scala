@@ -1,13 +1,20 @@
 package brbo.verification.dependency.reachdef
 
+import brbo.common.TargetMethod
 import brbo.verification.BasicProcessor
 import brbo.verification.dependency.ReachingDefinition
 import brbo.{StringCompare, TestCaseJavaProgram}
 import com.sun.source.tree.ExpressionStatementTree
+import org.apache.commons.io.{FileUtils, FilenameUtils}
 import org.apache.logging.log4j.LogManager
 import org.scalatest.flatspec.AnyFlatSpec
 
+import java.io.File
+import java.nio.charset.StandardCharsets
 import scala.collection.JavaConverters._
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Future}
 
 class ReachingDefinitionUnitTest extends AnyFlatSpec {
   private val logger = LogManager.getLogger(classOf[ReachingDefinitionUnitTest])
@@ -42,6 +49,31 @@ class ReachingDefinitionUnitTest extends AnyFlatSpec {
         assert(StringCompare.ignoreWhitespaces(output, testCase.expectedOutput, testCase.className))
     })
   }
+
+  it should "be deterministic when running concurrently" in {
+    val directory = new File("src/main/java/brbo/benchmarks/sas21/synthetic")
+    val targetMethods = directory.listFiles().filter(file => file.getName.endsWith(".java")).sortBy(file => file.getName).take(20).map({
+      file =>
+        val className = s"brbo.benchmarks.sas21.synthetic.${FilenameUtils.getBaseName(file.getName)}"
+        BasicProcessor.getTargetMethod(className, FileUtils.readFileToString(file, StandardCharsets.UTF_8))
+    }).toList
+
+    def definitions(targetMethod: TargetMethod): List[String] = {
+      val result = ReachingDefinition.run(targetMethod)
+      targetMethod.cfg.getAllNodes.asScala.toList.map({
+        node =>
+          val definitions = result.get(node).map(definitions => definitions.map(_.toString).toList.sorted.mkString(", "))
+          s"$node -> $definitions"
+      }).sorted
+    }
+
+    val expected = targetMethods.map(targetMethod => definitions(targetMethod))
+    (1 to 4).foreach({
+      _ =>
+        val actual = Await.result(Future.traverse(targetMethods ++ targetMethods)(targetMethod => Future(definitions(targetMethod))), Duration.Inf)
+        assert(actual == expected ++ expected)
+    })
+  }
 }
 
 object ReachingDefinitionUnitTest {